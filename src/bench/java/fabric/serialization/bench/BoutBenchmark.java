@@ -0,0 +1,98 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.serialization.bench;
+
+import fabric.serialization.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode benchmarks for Bout messages as image size grows
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoutBenchmark {
+
+    /**
+     * Image size in bytes (1 KB to 5 MB)
+     */
+    @Param({"1024", "65536", "1048576", "5242880"})
+    public int imageSize;
+
+    /**
+     * Bout to be encoded
+     */
+    private Bout bout;
+
+    /**
+     * Encoding of bout, rewound before each decode
+     */
+    private ByteArrayInputStream encoding;
+
+    /**
+     * Input source over encoding
+     */
+    private MessageInput in;
+
+    /**
+     * Output sink discarding all bytes
+     */
+    private MessageOutput out;
+
+    /**
+     * Builds a Bout with a random image and its encoding
+     *
+     * @throws ValidationException if Bout is invalid
+     * @throws IOException if I/O problem
+     */
+    @Setup
+    public void setup() throws ValidationException, IOException {
+        byte[] image = new byte[imageSize];
+        new Random(imageSize).nextBytes(image);
+        bout = new Bout("movie", image);
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        bout.encode(new MessageOutput(bOut));
+        encoding = new ByteArrayInputStream(bOut.toByteArray());
+        in = new MessageInput(encoding);
+        out = new MessageOutput(OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Decodes the Bout
+     *
+     * @return decoded Bout
+     * @throws ValidationException if Bout is invalid
+     * @throws IOException if I/O problem
+     */
+    @Benchmark
+    public Message decode() throws ValidationException, IOException {
+        encoding.reset();
+        return Message.decode(in);
+    }
+
+    /**
+     * Encodes the Bout
+     *
+     * @throws IOException if I/O problem
+     */
+    @Benchmark
+    public void encode() throws IOException {
+        bout.encode(out);
+    }
+}
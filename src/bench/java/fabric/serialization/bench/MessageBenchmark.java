@@ -0,0 +1,106 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.serialization.bench;
+
+import fabric.serialization.*;
+import fabric.serialization.Error;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode benchmarks for every Fabric message type
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+
+    /**
+     * Operation of the message under test
+     */
+    @Param({"ACK", "BOUT", "CLNG", "CRED", "ERROR", "FABRIC", "ID", "KNOWP"})
+    public String operation;
+
+    /**
+     * Message to be encoded
+     */
+    private Message message;
+
+    /**
+     * Encoding of message, rewound before each decode
+     */
+    private ByteArrayInputStream encoding;
+
+    /**
+     * Input source over encoding
+     */
+    private MessageInput in;
+
+    /**
+     * Output sink discarding all bytes
+     */
+    private MessageOutput out;
+
+    /**
+     * Builds the message under test and its encoding
+     *
+     * @throws ValidationException if message is invalid
+     * @throws IOException if I/O problem
+     */
+    @Setup
+    public void setup() throws ValidationException, IOException {
+        message = switch (operation) {
+            case "ACK" -> new Ack();
+            case "BOUT" -> new Bout("movie", new byte[1024]);
+            case "CLNG" -> new Challenge("1234567890");
+            case "CRED" -> new Credentials("0123456789ABCDEF0123456789ABCDEF");
+            case "ERROR" -> new Error(500, "Unable to authenticate");
+            case "FABRIC" -> new Fabric();
+            case "ID" -> new ID("robinson");
+            case "KNOWP" -> new Knowp();
+            default -> throw new IllegalArgumentException(operation);
+        };
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        message.encode(new MessageOutput(bOut));
+        encoding = new ByteArrayInputStream(bOut.toByteArray());
+        in = new MessageInput(encoding);
+        out = new MessageOutput(OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Decodes the message
+     *
+     * @return decoded message
+     * @throws ValidationException if message is invalid
+     * @throws IOException if I/O problem
+     */
+    @Benchmark
+    public Message decode() throws ValidationException, IOException {
+        encoding.reset();
+        return Message.decode(in);
+    }
+
+    /**
+     * Encodes the message
+     *
+     * @throws IOException if I/O problem
+     */
+    @Benchmark
+    public void encode() throws IOException {
+        message.encode(out);
+    }
+}
@@ -0,0 +1,67 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package stitch.serialization.bench;
+
+import org.openjdk.jmh.annotations.*;
+import stitch.serialization.CodeException;
+import stitch.serialization.Query;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode benchmarks for Stitch queries
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBenchmark {
+
+    /**
+     * Query to be encoded
+     */
+    private Query query;
+
+    /**
+     * Encoding of query
+     */
+    private byte[] encoding;
+
+    /**
+     * Builds a query and its encoding
+     */
+    @Setup
+    public void setup() {
+        query = new Query(0x0DEADBEEFL, 255);
+        encoding = query.encode();
+    }
+
+    /**
+     * Decodes the query
+     *
+     * @return decoded query
+     * @throws CodeException if query is invalid
+     */
+    @Benchmark
+    public Query decode() throws CodeException {
+        return new Query(encoding);
+    }
+
+    /**
+     * Encodes the query
+     *
+     * @return encoded query
+     */
+    @Benchmark
+    public byte[] encode() {
+        return query.encode();
+    }
+}
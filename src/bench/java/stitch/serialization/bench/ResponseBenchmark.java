@@ -0,0 +1,91 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package stitch.serialization.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import stitch.serialization.CodeException;
+import stitch.serialization.ErrorCode;
+import stitch.serialization.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode benchmarks for Stitch responses as post count and post length
+ * grow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBenchmark {
+
+    /**
+     * Number of posts in the response
+     */
+    @Param({"1", "16", "255"})
+    public int postCount;
+
+    /**
+     * Length of each post in bytes
+     */
+    @Param({"16", "250"})
+    public int postLength;
+
+    /**
+     * Response to be encoded
+     */
+    private Response response;
+
+    /**
+     * Encoding of response
+     */
+    private byte[] encoding;
+
+    /**
+     * Builds a response and its encoding
+     */
+    @Setup
+    public void setup() {
+        List<String> posts = new ArrayList<>();
+        for (int i = 0; i < postCount; ++i) {
+            posts.add(("user" + i + ": BOUT #").repeat(postLength)
+                    .substring(0, postLength));
+        }
+        response = new Response(0x0DEADBEEFL, ErrorCode.NOERROR, posts);
+        encoding = response.encode();
+    }
+
+    /**
+     * Decodes the response and reads every post
+     *
+     * @param bh sink for decoded posts
+     * @throws CodeException if response is invalid
+     */
+    @Benchmark
+    public void decode(Blackhole bh) throws CodeException {
+        for (String post : new Response(encoding).getPosts()) {
+            bh.consume(post);
+        }
+    }
+
+    /**
+     * Encodes the response
+     *
+     * @return encoded response
+     */
+    @Benchmark
+    public byte[] encode() {
+        return response.encode();
+    }
+}
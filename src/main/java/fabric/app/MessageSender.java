@@ -14,6 +14,8 @@ import fabric.serialization.MessageOutput;
 import fabric.serialization.ValidationException;
 
 import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -38,6 +40,18 @@ public abstract class MessageSender {
      */
     protected MessageSender() {}
 
+    /**
+     * Applies the socket options used for all Fabric connections. Messages
+     * are written as whole frames, so Nagle's algorithm only adds latency.
+     *
+     * @param socket socket to be configured
+     * @throws SocketException if socket options cannot be set
+     */
+    protected static void configureSocket(Socket socket)
+            throws SocketException {
+        socket.setTcpNoDelay(true);
+    }
+
     /**
      * Checks a Message to confirm that it has the expected Message type.
      *
@@ -45,6 +59,7 @@ public abstract class MessageSender {
      * @param a array of expected message types
      * @throws MessageException if unexpected message type
      */
+    @SafeVarargs
     protected static void checkMessageType(Message m,
                                             Class<? extends Message>... a)
             throws MessageException {
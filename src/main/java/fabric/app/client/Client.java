@@ -30,25 +30,37 @@ public class Client extends MessageSender {
     private static Socket clientSocket;
 
     /**
-     * Main method of Fabric client, allows user to send a single BOUT or
-     * KNOWP message to the Fabric server pointed to by server and port in args
+     * Index in args of the first request
+     */
+    private static final int FIRSTREQ = 4;
+
+    /**
+     * Largest window a client may ask for
+     */
+    private static final int MAXWINDOW = 65535;
+
+    /**
+     * Main method of Fabric client, allows user to send one or more BOUT or
+     * KNOWP messages to the Fabric server pointed to by server and port in
+     * args, all in a single session. With more than one request, the client
+     * asks for a window and sends up to that many requests ahead of their
+     * ACKs; a request the server fails to post is reported and the rest are
+     * still sent.
      *
-     * @param args server, port, userid, password, and request
+     * @param args server, port, userid, password, and requests
      */
     public static void main(String[] args) {
         // Validate initial user input
-        if (args.length != 5 && args.length != 7) {
+        if (args.length < FIRSTREQ + 1) {
             System.err.println("Usage: java Client <server> <port> " +
-                    "<userid> <password> <request...>");
+                    "<userid> <password> <request...> [<request...> ...]");
             System.exit(1);
         } else if (!args[1].matches("[0-9]+")) {
             System.err.println("Validation Failed: invalid port number");
             System.exit(1);
-        } else if ((!args[4].equals("KNOWP") && !args[4].equals("BOUT")) ||
-                (args[4].equals("KNOWP") && args.length != 5) ||
-                (args[4].equals("BOUT") && args.length != 7)) {
-            System.err.println("Validation Failed: <request...> must be " +
-                    "either 1) BOUT <category> <image...> or 2) KNOWP");
+        } else if (!validRequests(args)) {
+            System.err.println("Validation Failed: each <request...> must " +
+                    "be either 1) BOUT <category> <image...> or 2) KNOWP");
             System.exit(1);
         }
 
@@ -61,6 +73,7 @@ public class Client extends MessageSender {
         // Initialize socket connection to server
         try {
             clientSocket = new Socket(server, port);
+            configureSocket(clientSocket);
             in = new MessageInput(clientSocket.getInputStream());
             out = new MessageOutput(clientSocket.getOutputStream());
         } catch (IOException ex) {
@@ -87,18 +100,148 @@ public class Client extends MessageSender {
         // Read next server message (ACK)
         System.out.println(receiveMessage(in, Ack.class));
 
-        // Send request (BOUT or KNOWP)
-        if (args.length == 5) {
+        // Ask to pipeline requests if there is more than one (WINDOW)
+        int count = countRequests(args);
+        int window = 1;
+        if (count > 1) {
+            sendWindow(out, Math.min(count, MAXWINDOW));
+            m = receiveMessage(in, Window.class);
+            System.out.println(m);
+            window = ((Window) m).getSize();
+        }
+
+        // Send requests (BOUT or KNOWP) up to the window ahead of their ACKs,
+        // writing each batch at once, and read the ACKs in order
+        int status = 0;
+        int next = FIRSTREQ;
+        int sent = 0;
+        for (int acked = 0; acked < count; ++acked) {
+            out.cork();
+            while (sent < count && sent - acked < window) {
+                next = sendRequest(out, args, next);
+                ++sent;
+            }
+            flushMessages(out);
+
+            // Read next server message (ACK, or ERROR if posting failed)
+            if (!receiveAck(in, window > 1)) {
+                status = 1;
+            }
+        }
+
+        // Close socket
+        closeSocket(status);
+    }
+
+    /**
+     * Counts the requests in args, which must already be valid
+     *
+     * @param args command line arguments
+     * @return number of requests
+     */
+    private static int countRequests(String[] args) {
+        int count = 0;
+        for (int i = FIRSTREQ; i < args.length; ++count) {
+            i += args[i].equals("KNOWP") ? 1 : 3;
+        }
+        return count;
+    }
+
+    /**
+     * Sends the request starting at index i of args
+     *
+     * @param out MessageOutput to which Message is encoded
+     * @param args command line arguments
+     * @param i index in args of the request
+     * @return index in args of the next request
+     */
+    private static int sendRequest(MessageOutput out, String[] args, int i) {
+        if (args[i].equals("KNOWP")) {
             sendKnowp(out);
+            return i + 1;
+        }
+        sendBout(out, args[i + 1], args[i + 2]);
+        return i + 3;
+    }
+
+    /**
+     * Receives the reply to a request. An ERROR is reported, and unless the
+     * session continues after it, the socket is closed and the client
+     * terminated.
+     *
+     * @param in MessageInput object from which to decode
+     * @param pipelined whether the session continues after an ERROR
+     * @return true if the reply was ACK; false if it was ERROR
+     */
+    private static boolean receiveAck(MessageInput in, boolean pipelined) {
+        while (true) {
+            Message m = null;
+            try {
+                m = readMessage(in);
+                checkMessageType(m, Ack.class);
+                System.out.println(m);
+                return true;
+            } catch (MessageException ex) {
+                if (m == null && ex.getError() != null && pipelined) {
+                    System.err.println("Error: " + ex.getMessage());
+                    return false;
+                } else if (m == null) {
+                    receiveFailed(ex);
+                } else {
+                    System.err.println(ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports a failed receive, then closes the socket and terminates
+     *
+     * @param ex exception from reading the message
+     */
+    private static void receiveFailed(MessageException ex) {
+        if (ex.getError() == null) {
+            System.err.println(ex.getMessage());
         } else {
-            sendBout(out, args[5], args[6]);
+            System.err.println("Error: " + ex.getMessage());
         }
+        closeSocket(1);
+    }
 
-        // Read next server message (ACK)
-        System.out.println(receiveMessage(in, Ack.class));
+    /**
+     * Writes any held messages to the server, closing the socket and
+     * terminating if an error occurs
+     *
+     * @param out MessageOutput holding messages
+     */
+    private static void flushMessages(MessageOutput out) {
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            System.err.println("Unable to communicate: " + ex.getMessage());
+            closeSocket(1);
+        }
+    }
 
-        // Close socket
-        closeSocket(0);
+    /**
+     * Checks that the arguments from FIRSTREQ on are a series of requests,
+     * each either BOUT with category and image or KNOWP
+     *
+     * @param args command line arguments
+     * @return true if the requests are well formed; false otherwise
+     */
+    private static boolean validRequests(String[] args) {
+        int i = FIRSTREQ;
+        while (i < args.length) {
+            if (args[i].equals("KNOWP")) {
+                i += 1;
+            } else if (args[i].equals("BOUT") && i + 2 < args.length) {
+                i += 3;
+            } else {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -136,12 +279,7 @@ public class Client extends MessageSender {
             try {
                 m = readMessage(in);
             } catch (MessageException ex) {
-                if (ex.getError() == null) {
-                    System.err.println(ex.getMessage());
-                } else {
-                    System.err.println("Error: " + ex.getMessage());
-                }
-                closeSocket(1);
+                receiveFailed(ex);
             }
 
             // Check message type if message successfully read
@@ -230,16 +368,34 @@ public class Client extends MessageSender {
         sendMessage(out, cred);
     }
 
+    /**
+     * Attempts to create a Window message and send it to the server. If an
+     * error occurs, the socket is closed and the client terminated.
+     *
+     * @param out MessageOutput to which Message is encoded
+     * @param size number of requests to send ahead of their ACKs
+     */
+    private static void sendWindow(MessageOutput out, int size) {
+        Window window = null;
+
+        try {
+            window = new Window(size);
+        } catch (ValidationException ex) {
+            System.err.println("Validation failed: " + ex.getMessage());
+            closeSocket(1);
+        }
+
+        // closeSocket doesn't return, window is not null
+        sendMessage(out, window);
+    }
+
     /**
      * Attempts to create a Knowp message and send it to the server.
      *
      * @param out MessageOutput to which Message is encoded
      */
     private static void sendKnowp(MessageOutput out) {
-        Knowp knowp = new Knowp();
-
-        // closeSocket doesn't return, id is not null
-        sendMessage(out, knowp);
+        sendMessage(out, Knowp.KNOWP);
     }
 
     /**
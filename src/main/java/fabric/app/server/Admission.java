@@ -0,0 +1,254 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server;
+
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Admission control for accepted connections. Connections wait in a bounded
+ * queue for one of a fixed number of threads, and a policy decides what
+ * happens when the queue is full, so that overload turns away or delays new
+ * clients instead of letting every queued client time out. Queue depth and
+ * time spent waiting are logged periodically.
+ */
+final class Admission {
+
+    /**
+     * Logger for Fabric server events
+     */
+    private static final Logger logger = Logger.getLogger("fabricServer");
+
+    /**
+     * What to do with a new connection when the queue is full
+     */
+    enum Policy {
+        /**
+         * Refuse the new connection
+         */
+        REJECT,
+        /**
+         * Stop accepting until the queue has room
+         */
+        PAUSE,
+        /**
+         * Refuse the connection that has waited longest and queue the new one
+         */
+        SHED
+    }
+
+    /**
+     * Connections waiting to be served
+     */
+    private final BlockingQueue<Runnable> pending;
+
+    /**
+     * Threads serving connections
+     */
+    private final ThreadPoolExecutor threads;
+
+    /**
+     * Policy applied when pending is full
+     */
+    private final Policy policy;
+
+    /**
+     * Serves an admitted connection
+     */
+    private final Consumer<Socket> handler;
+
+    /**
+     * Turns away a connection that is not admitted
+     */
+    private final Consumer<Socket> refuse;
+
+    /**
+     * Connections served since metrics were last logged
+     */
+    private final LongAdder served = new LongAdder();
+
+    /**
+     * Connections refused since metrics were last logged
+     */
+    private final LongAdder refused = new LongAdder();
+
+    /**
+     * Total time (in milliseconds) connections served since metrics were last
+     * logged spent waiting
+     */
+    private final LongAdder waited = new LongAdder();
+
+    /**
+     * Longest time (in milliseconds) a connection waited since metrics were
+     * last logged
+     */
+    private final AtomicLong maxWait = new AtomicLong();
+
+    /**
+     * Deepest the queue has been since metrics were last logged
+     */
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    /**
+     * Creates admission control and starts its threads
+     *
+     * @param size number of connections served at once
+     * @param backlog number of connections that may wait to be served
+     * @param policy policy applied when the backlog is full
+     * @param virtual whether connections are served by virtual threads
+     * @param handler serves an admitted connection
+     * @param refuse turns away a connection that is not admitted
+     * @param interval time (in seconds) between metrics logs, or 0 for none
+     */
+    Admission(int size, int backlog, Policy policy, boolean virtual,
+              Consumer<Socket> handler, Consumer<Socket> refuse,
+              int interval) {
+        this.pending = new ArrayBlockingQueue<>(backlog);
+        ThreadFactory factory = virtual ? Thread.ofVirtual().factory() :
+                Executors.defaultThreadFactory();
+        this.threads = new ThreadPoolExecutor(size, size, 0,
+                TimeUnit.MILLISECONDS, pending, factory);
+        // every thread is started, so connections can be queued directly
+        this.threads.prestartAllCoreThreads();
+        this.policy = policy;
+        this.handler = handler;
+        this.refuse = refuse;
+        if (interval > 0) {
+            ScheduledExecutorService timer =
+                    Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread t = new Thread(r, "fabric-metrics");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            timer.scheduleAtFixedRate(this::logMetrics, interval, interval,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Queues an accepted connection to be served, applying the policy if the
+     * queue is full. Called only by the accepting thread.
+     *
+     * @param client accepted connection
+     */
+    void admit(Socket client) {
+        Pending p = new Pending(client);
+        switch (policy) {
+            case PAUSE -> {
+                // put clears the interrupt flag when it throws, so retry
+                // and restore the flag once the connection is queued
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        pending.put(p);
+                        break;
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case REJECT -> {
+                if (!pending.offer(p)) {
+                    refuse(client);
+                    return;
+                }
+            }
+            case SHED -> {
+                while (!pending.offer(p)) {
+                    Runnable oldest = pending.poll();
+                    if (oldest != null) {
+                        refuse(((Pending) oldest).client);
+                    }
+                }
+            }
+        }
+        int depth = pending.size();
+        maxDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    /**
+     * Turns away a connection and counts it
+     *
+     * @param client connection not admitted
+     */
+    private void refuse(Socket client) {
+        refused.increment();
+        refuse.accept(client);
+    }
+
+    /**
+     * Logs and resets the metrics gathered since they were last logged
+     */
+    private void logMetrics() {
+        long count = served.sumThenReset();
+        long wait = waited.sumThenReset();
+        long max = maxWait.getAndSet(0);
+        long refusedCount = refused.sumThenReset();
+        int depth = maxDepth.getAndSet(pending.size());
+        if (count == 0 && refusedCount == 0) {
+            return;
+        }
+        logger.info(() -> "Admission: served=" + count + " refused=" +
+                refusedCount + " queued=" + pending.size() + " maxQueued=" +
+                depth + " meanWait=" + (count == 0 ? 0 : wait / count) +
+                "ms maxWait=" + max + "ms");
+    }
+
+    /**
+     * Connection waiting to be served
+     */
+    private final class Pending implements Runnable {
+
+        /**
+         * Accepted connection
+         */
+        private final Socket client;
+
+        /**
+         * Time (in nanoseconds) the connection was queued
+         */
+        private final long queued = System.nanoTime();
+
+        /**
+         * Creates a waiting connection
+         *
+         * @param client accepted connection
+         */
+        Pending(Socket client) {
+            this.client = client;
+        }
+
+        /**
+         * Records how long the connection waited and serves it
+         */
+        @Override
+        public void run() {
+            long wait = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() -
+                    queued);
+            served.increment();
+            waited.add(wait);
+            maxWait.accumulateAndGet(wait, Math::max);
+            handler.accept(client);
+        }
+    }
+}
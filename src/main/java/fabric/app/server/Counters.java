@@ -0,0 +1,401 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sequence counters kept in a memory-mapped file, so they survive restarts.
+ * The file is a header followed by fixed 16-byte slots, each holding the
+ * 64-bit key of a userID, its counter, and a 32-bit check computed from the
+ * userID independently of the key, claimed in order. A key bound again with
+ * a different check belongs to a different userID, and is refused rather
+ * than sharing the counter. Slots are mapped
+ * in segments that double in size, and the file grows by mapping one more
+ * segment past its end, so a claimed slot never moves: every Users index
+ * built from the password file shares the same counters, and the table grows
+ * while the server runs without disturbing them. Updates are atomic stores
+ * into the mapping; they reach storage when the file is synced, so recovery
+ * is just mapping the file.
+ */
+public final class Counters {
+
+    /**
+     * First int of a counter file ("FKSC")
+     */
+    private static final int MAGIC = 0x46_4B_53_43;
+
+    /**
+     * Length (in bytes) of the file header: magic, slots in the first
+     * segment, padding
+     */
+    private static final int HEADER = 16;
+
+    /**
+     * Length (in bytes) of a slot: key, counter, check
+     */
+    private static final int SLOT = 16;
+
+    /**
+     * Offset of the counter within a slot
+     */
+    private static final int COUNT = 8;
+
+    /**
+     * Offset of the check within a slot
+     */
+    private static final int CHECK = 12;
+
+    /**
+     * Log base 2 of the number of slots in the first segment
+     */
+    private static final int MINBITS = 10;
+
+    /**
+     * Number of slots in the first segment (and in the second; each later
+     * segment doubles the table)
+     */
+    private static final int MINSLOTS = 1 << MINBITS;
+
+    /**
+     * Most slots in a counter file
+     */
+    private static final int MAXSLOTS = 1 << 26;
+
+    /**
+     * Keys in a mapped buffer
+     */
+    private static final VarHandle keys = MethodHandles
+            .byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Counters and checks in a mapped buffer
+     */
+    private static final VarHandle counts = MethodHandles
+            .byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Counter file (null if counters are kept in memory only)
+     */
+    private final Path path;
+
+    /**
+     * Slots of each segment; replaced, never changed, when a segment is added
+     */
+    private volatile ByteBuffer[] segments;
+
+    /**
+     * Open-addressing index of claimed slots by key (slot + 1, or 0 if
+     * empty); its length is a power of two
+     */
+    private int[] index;
+
+    /**
+     * Number of slots in use, which are the first slots of the table
+     */
+    private int used;
+
+    /**
+     * Opens a counter file, creating it if it does not exist
+     *
+     * @param file counter file
+     * @throws IOException if the file cannot be opened or is not a counter
+     * file
+     */
+    public Counters(String file) throws IOException {
+        this.path = Paths.get(file);
+        this.segments = new ByteBuffer[0];
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            // the header must reach storage, along with the file's size,
+            // before any slot can
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER)
+                        .order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC)
+                        .putInt(MINSLOTS).rewind();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+            addSegment();
+            sync();
+        } else {
+            ByteBuffer header;
+            try (InputStream in = Files.newInputStream(path)) {
+                header = ByteBuffer.wrap(in.readNBytes(HEADER))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            long slots = (Files.size(path) - HEADER) / SLOT;
+            if (header.limit() < HEADER || header.getInt(0) != MAGIC ||
+                    header.getInt(4) != MINSLOTS ||
+                    Files.size(path) != HEADER + slots * SLOT ||
+                    slots < MINSLOTS || slots > MAXSLOTS ||
+                    Long.bitCount(slots) != 1) {
+                throw new IOException("Improper counter file " + path);
+            }
+            while (capacity() < slots) {
+                addSegment();
+            }
+        }
+        this.index = new int[2 * MINSLOTS];
+        for (int s = 0; s < capacity(); ++s) {
+            if (key(s) != 0) {
+                // a crash may lose a claim, leaving an empty slot behind
+                used = s + 1;
+                insert(s);
+            }
+        }
+    }
+
+    /**
+     * Creates counters kept in memory only, which start from 0
+     */
+    public Counters() {
+        this.path = null;
+        this.segments = new ByteBuffer[0];
+        this.index = new int[2 * MINSLOTS];
+        try {
+            addSegment();
+        } catch (IOException ex) {
+            // cannot happen, since no file is mapped
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Finds or claims the slot of each key, adding segments as the table
+     * fills. Slots already handed out stay where they are.
+     *
+     * @param keys nonzero key of each userID
+     * @param checks check of each userID, computed independently of its key
+     * @return slot of each key
+     * @throws IOException if the table is full or cannot grow, or if a key
+     * is bound with a check other than its own (two userIDs collide)
+     * @throws IllegalArgumentException if keys and checks differ in length
+     */
+    public synchronized int[] bind(long[] keys, int[] checks)
+            throws IOException, IllegalArgumentException {
+        if (keys.length != checks.length) {
+            throw new IllegalArgumentException("Keys and checks differ");
+        }
+        int missing = 0;
+        for (long k : keys) {
+            if (find(k) < 0) {
+                ++missing;
+            }
+        }
+        if ((long) used + missing > MAXSLOTS) {
+            throw new IOException("Too many users for counter file");
+        }
+        int[] found = new int[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            int s = find(keys[i]);
+            if (s < 0) {
+                if (used == capacity()) {
+                    addSegment();
+                }
+                s = used++;
+                ByteBuffer seg = segments[segment(s)];
+                // the key claims the slot, so it is stored last
+                counts.setVolatile(seg, offset(s) + CHECK, checks[i]);
+                Counters.keys.setVolatile(seg, offset(s), keys[i]);
+                insert(s);
+            } else if ((int) counts.getVolatile(segments[segment(s)],
+                    offset(s) + CHECK) != checks[i]) {
+                throw new IOException("Counter key collision: " +
+                        Long.toHexString(keys[i]));
+            }
+            found[i] = s;
+        }
+        return found;
+    }
+
+    /**
+     * Atomically increments a counter
+     *
+     * @param slot slot of the counter
+     * @return new value
+     */
+    public int increment(int slot) {
+        return (int) counts.getAndAdd(segments[segment(slot)],
+                offset(slot) + COUNT, 1) + 1;
+    }
+
+    /**
+     * Returns the value of a counter
+     *
+     * @param slot slot of the counter
+     * @return current value
+     */
+    public int get(int slot) {
+        return (int) counts.getVolatile(segments[segment(slot)],
+                offset(slot) + COUNT);
+    }
+
+    /**
+     * Writes counter updates through to storage
+     */
+    public void sync() {
+        for (ByteBuffer seg : segments) {
+            if (seg instanceof MappedByteBuffer m) {
+                m.force();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of slots in the segments so far
+     *
+     * @return number of slots
+     */
+    private int capacity() {
+        return start(segments.length);
+    }
+
+    /**
+     * Maps (or allocates) the next segment, extending the file, and
+     * publishes it with the others
+     *
+     * @throws IOException if the file cannot be extended
+     */
+    private void addSegment() throws IOException {
+        int n = segments.length;
+        int size = start(n + 1) - start(n);
+        if (start(n + 1) > MAXSLOTS) {
+            throw new IOException("Too many users for counter file");
+        }
+        ByteBuffer seg;
+        if (path == null) {
+            seg = ByteBuffer.allocateDirect(size * SLOT);
+        } else {
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                seg = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER + (long) start(n) * SLOT, (long) size * SLOT);
+            }
+        }
+        ByteBuffer[] larger = Arrays.copyOf(segments, n + 1);
+        larger[n] = seg.order(ByteOrder.LITTLE_ENDIAN);
+        segments = larger;
+    }
+
+    /**
+     * Finds the slot of a key
+     *
+     * @param key nonzero key
+     * @return slot of key, or -1 if it has none
+     */
+    private int find(long key) {
+        int mask = index.length - 1;
+        for (int i = hash(key) & mask; index[i] != 0; i = (i + 1) & mask) {
+            if (key(index[i] - 1) == key) {
+                return index[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a claimed slot to the index, doubling the index to keep it at
+     * most half full
+     *
+     * @param slot claimed slot
+     */
+    private void insert(int slot) {
+        if (2 * used > index.length) {
+            int[] old = index;
+            index = new int[2 * old.length];
+            for (int s : old) {
+                if (s != 0) {
+                    place(s - 1);
+                }
+            }
+        }
+        place(slot);
+    }
+
+    /**
+     * Stores a slot in the first free place of the index for its key
+     *
+     * @param slot claimed slot
+     */
+    private void place(int slot) {
+        int mask = index.length - 1;
+        int i = hash(key(slot)) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+    }
+
+    /**
+     * Returns the key in a slot
+     *
+     * @param slot slot to be read
+     * @return key, or 0 if the slot is empty
+     */
+    private long key(int slot) {
+        return (long) keys.getVolatile(segments[segment(slot)],
+                offset(slot));
+    }
+
+    /**
+     * Folds a key into an index position
+     *
+     * @param key nonzero key
+     * @return hash of key
+     */
+    private static int hash(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Returns the segment holding a slot
+     *
+     * @param slot slot number
+     * @return index of the segment
+     */
+    private static int segment(int slot) {
+        return 32 - Integer.numberOfLeadingZeros(slot >>> MINBITS);
+    }
+
+    /**
+     * Returns the first slot of a segment, which is also the number of slots
+     * in the segments before it
+     *
+     * @param segment index of the segment
+     * @return slot number
+     */
+    private static int start(int segment) {
+        return segment == 0 ? 0 : MINSLOTS << (segment - 1);
+    }
+
+    /**
+     * Returns the offset of a slot in its segment
+     *
+     * @param slot slot number
+     * @return index of the slot in its segment's buffer
+     */
+    private static int offset(int slot) {
+        return (slot - start(segment(slot))) * SLOT;
+    }
+}
@@ -0,0 +1,717 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server;
+
+import fabric.app.MessageException;
+import fabric.app.MessageSender;
+import fabric.serialization.*;
+import fabric.serialization.Error;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking event loop serving many Fabric connections from one thread.
+ * Each connection drives its own Session as complete messages arrive, and
+ * posts are queued for the writer thread so that file I/O never blocks the
+ * loop. A post that finds the queue full is held by its connection, which
+ * stops reading, and offered again from the loop until it fits. Posts
+ * pipelined by a client are all submitted at once and answered
+ * in order as they are written.
+ */
+final class EventLoop extends MessageSender implements Runnable {
+
+    /**
+     * Logger for Fabric server events
+     */
+    private static final Logger logger = Logger.getLogger("fabricServer");
+
+    /**
+     * Initial size (in bytes) of connection input and output buffers, which
+     * covers every message but BOUT and keeps idle connections cheap
+     */
+    private static final int BUFSIZE = 512;
+
+    /**
+     * Interval (in milliseconds) between checks for idle connections
+     */
+    private static final int SWEEP = 1000;
+
+    /**
+     * Interval (in milliseconds) between offers of posts held while the post
+     * queue is full
+     */
+    private static final int RETRY = 1;
+
+    /**
+     * Selector for all connections owned by this loop
+     */
+    private final Selector selector;
+
+    /**
+     * Work handed to the loop by other threads, run on the loop thread
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Connections holding a post that the full post queue refused, oldest
+     * first (used only by the loop thread)
+     */
+    private final Queue<Connection> held = new ArrayDeque<>();
+
+    /**
+     * Password file of known users, whose current index each new session
+     * keeps
+     */
+    private final UserFile users;
+
+    /**
+     * Issuer of challenge nonces
+     */
+    private final Nonces nonces;
+
+    /**
+     * Largest window granted to pipelining clients
+     */
+    private final int maxWindow;
+
+    /**
+     * Longest message (in bytes) a connection buffers before it is closed
+     */
+    private final int maxMessage;
+
+    /**
+     * Timer enforcing per-phase connection deadlines
+     */
+    private final TimerWheel timers;
+
+    /**
+     * Time (in milliseconds) after which a connection with no input is
+     * closed
+     */
+    private final long timeout;
+
+    /**
+     * Creates an event loop with no connections
+     *
+     * @param users password file of known users
+     * @param nonces issuer of challenge nonces
+     * @param maxWindow largest window granted to pipelining clients
+     * @param maxMessage longest message (in bytes) accepted from a client
+     * @param timers timer enforcing per-phase connection deadlines
+     * @param timeout time (in milliseconds) after which an idle connection is
+     *                closed
+     * @throws IOException if the selector cannot be opened
+     */
+    EventLoop(UserFile users, Nonces nonces, int maxWindow, int maxMessage,
+              TimerWheel timers, long timeout) throws IOException {
+        this.selector = Selector.open();
+        this.users = users;
+        this.nonces = nonces;
+        this.maxWindow = maxWindow;
+        this.maxMessage = maxMessage;
+        this.timers = timers;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Hands a newly accepted connection to the loop. May be called from any
+     * thread.
+     *
+     * @param channel accepted client connection
+     */
+    void add(SocketChannel channel) {
+        execute(() -> {
+            try {
+                new Connection(channel).start();
+            } catch (IOException ex) {
+                logger.warning(() -> "Unable to communicate: " +
+                        ex.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warning(() -> "Unable to communicate: " +
+                            e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the loop until its selector fails
+     */
+    @Override
+    public void run() {
+        long nextSweep = System.currentTimeMillis() + SWEEP;
+        while (true) {
+            try {
+                selector.select(this::ready, held.isEmpty() ? SWEEP : RETRY);
+            } catch (IOException ex) {
+                logger.severe(() -> "Event loop failed: " + ex.getMessage());
+                return;
+            }
+            for (Runnable task; (task = tasks.poll()) != null; ) {
+                task.run();
+            }
+            for (int n = held.size(); n > 0; --n) {
+                held.remove().retry();
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextSweep) {
+                sweep(now);
+                nextSweep = now + SWEEP;
+            }
+        }
+    }
+
+    /**
+     * Queues work to be run on the loop thread and wakes the loop
+     *
+     * @param task work to be run
+     */
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Services a connection that is ready for I/O
+     *
+     * @param key selection key of the connection
+     */
+    private void ready(SelectionKey key) {
+        Connection c = (Connection) key.attachment();
+        if (key.isValid() && key.isWritable()) {
+            c.write();
+        }
+        if (key.isValid() && key.isReadable()) {
+            c.read();
+        }
+    }
+
+    /**
+     * Closes connections that have had no input for longer than the timeout.
+     * An authenticated session idle between posts ends gracefully.
+     *
+     * @param now current time (in milliseconds)
+     */
+    private void sweep(long now) {
+        for (SelectionKey key : selector.keys()) {
+            Connection c = (Connection) key.attachment();
+            Session.State state = c.session.getState();
+            if (!key.isValid() || !c.owed.isEmpty() || c.holding ||
+                    now - c.lastRead <= timeout) {
+                continue;
+            }
+            if (state == Session.State.POST && c.inbox.position() == 0) {
+                logger.info(() -> "Client at " + c.addr + " idle, ending " +
+                        "session after " + c.session.getPostCount() +
+                        " posts");
+                c.session.end();
+                c.close(true);
+            } else {
+                logger.warning(() -> "Unable to communicate: Read timed out");
+                c.close(false);
+            }
+        }
+    }
+
+    /**
+     * Reply owed to a client
+     *
+     * @param post outcome of a submitted post (null if message is ready)
+     * @param message reply to be sent (null for a post)
+     */
+    private record Owed(CompletableFuture<Boolean> post, Message message) {}
+
+    /**
+     * State of a single client connection
+     */
+    private final class Connection {
+
+        /**
+         * Client connection
+         */
+        private final SocketChannel channel;
+
+        /**
+         * Client socket address (for logging)
+         */
+        private final String addr;
+
+        /**
+         * Server side of the exchange
+         */
+        private final Session session = new Session(users.current(),
+                nonces, maxWindow);
+
+        /**
+         * Sink encoding replies into outbox
+         */
+        private final MessageOutput out;
+
+        /**
+         * Bytes received but not yet decoded (in write mode)
+         */
+        private ByteBuffer inbox = ByteBuffer.allocate(BUFSIZE);
+
+        /**
+         * Source decoding each message in place in inbox
+         */
+        private final MessageInput in = new MessageInput(inbox.array(), 0, 0);
+
+        /**
+         * Bytes encoded but not yet sent (in write mode)
+         */
+        private ByteBuffer outbox = ByteBuffer.allocate(BUFSIZE);
+
+        /**
+         * Replies owed to the client, oldest first, while any post is pending
+         */
+        private final Queue<Owed> owed = new ArrayDeque<>();
+
+        /**
+         * Whether the client has finished sending, leaving posts pending
+         */
+        private boolean ended;
+
+        /**
+         * Number of bytes at the front of inbox already searched for the end
+         * of a message
+         */
+        private int scanned;
+
+        /**
+         * Time (in milliseconds) input was last received
+         */
+        private long lastRead = System.currentTimeMillis();
+
+        /**
+         * Selection key of channel (null until registered)
+         */
+        private SelectionKey key;
+
+        /**
+         * Deadline for the current phase, which closes the connection on the
+         * loop thread if it passes
+         */
+        private final TimerWheel.Deadline deadline = timers.deadline(() ->
+                execute(this::expired));
+
+        /**
+         * Phase the deadline was last armed for
+         */
+        private Session.State phase;
+
+        /**
+         * Whether the deadline is armed for a post that has started arriving
+         */
+        private boolean arriving;
+
+        /**
+         * Whether the session's post is held because the post queue was full
+         */
+        private boolean holding;
+
+        /**
+         * Creates the state for an accepted connection
+         *
+         * @param channel client connection
+         * @throws IOException if the connection cannot be configured
+         */
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            Socket socket = channel.socket();
+            this.addr = socket.getInetAddress().getHostAddress() + ":" +
+                    socket.getPort();
+            configureSocket(socket);
+            channel.configureBlocking(false);
+            this.out = new MessageOutput(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    reserve(1).put((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    reserve(len).put(b, off, len);
+                }
+            });
+        }
+
+        /**
+         * Registers the connection and sends the opening message
+         *
+         * @throws ClosedChannelException if the connection is closed
+         */
+        void start() throws ClosedChannelException {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            phase = session.getState();
+            Server.armPhase(deadline, phase);
+            logger.fine(() -> "Sending Fabric to client at " + addr);
+            reply(session.start());
+            if (key.isValid()) {
+                write();
+            }
+        }
+
+        /**
+         * Reads available input and handles each complete message in it
+         */
+        void read() {
+            try {
+                if (!inbox.hasRemaining()) {
+                    if (inbox.capacity() >= maxMessage) {
+                        logger.warning(() -> "Message from client at " +
+                                addr + " exceeds " + maxMessage + " bytes");
+                        close(false);
+                        return;
+                    }
+                    inbox = ByteBuffer.allocate((int) Math.min(
+                            2L * inbox.capacity(), maxMessage))
+                            .put(inbox.flip());
+                }
+                int n = channel.read(inbox);
+                deadline.received(n);
+                if (n < 0) {
+                    if (session.getState() == Session.State.POST &&
+                            inbox.position() == 0 && !owed.isEmpty()) {
+                        // end once the pending posts are answered
+                        ended = true;
+                        key.interestOps(key.interestOps() &
+                                ~SelectionKey.OP_READ);
+                    } else if (session.getState() == Session.State.POST &&
+                            inbox.position() == 0) {
+                        endSession();
+                    } else {
+                        logger.warning(() -> "Unable to communicate: " +
+                                "Premature EOS");
+                        close(false);
+                    }
+                    return;
+                }
+            } catch (IOException ex) {
+                logger.warning(() -> "Unable to communicate: " +
+                        ex.getMessage());
+                close(false);
+                return;
+            }
+            lastRead = System.currentTimeMillis();
+            drain();
+        }
+
+        /**
+         * Handles each complete message in inbox until the session's window
+         * of pending posts is full, then sends the replies that are ready
+         * together
+         */
+        void drain() {
+            // every message ends at the first TERM2, which never appears
+            // inside a field
+            inbox.flip();
+            int start = 0;
+            int i = scanned;
+            while (i < inbox.limit() && key.isValid() && !holding &&
+                    session.getPending() < session.getWindow()) {
+                if (inbox.get(i++) == '\n') {
+                    handle(start, i - start);
+                    start = i;
+                }
+            }
+            inbox.position(start);
+            inbox.compact();
+            scanned = i - start;
+            if (inbox.position() == 0 && inbox.capacity() > BUFSIZE) {
+                inbox = ByteBuffer.allocate(BUFSIZE);
+            }
+            deliver();
+            if (key.isValid()) {
+                // stop reading while the window is full or a post is held
+                boolean reading = !ended && !holding &&
+                        session.getPending() < session.getWindow();
+                key.interestOps(reading ?
+                        key.interestOps() | SelectionKey.OP_READ :
+                        key.interestOps() & ~SelectionKey.OP_READ);
+                rearm();
+                write();
+            }
+        }
+
+        /**
+         * Ends the session once the client has finished sending, closing the
+         * connection gracefully after any replies are sent
+         */
+        private void endSession() {
+            logger.info(() -> "Client at " + addr + " ended session after " +
+                    session.getPostCount() + " posts");
+            session.end();
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            write();
+        }
+
+        /**
+         * Arms the deadline when the session enters a new phase, and for a
+         * post once it starts arriving
+         */
+        private void rearm() {
+            Session.State state = session.getState();
+            if (state != phase) {
+                phase = state;
+                arriving = false;
+                Server.armPhase(deadline, state);
+            }
+            // a post is not timed while the window is full or a post is
+            // held, since it is not being read
+            boolean timed = state == Session.State.POST &&
+                    inbox.position() > 0 && !holding &&
+                    session.getPending() < session.getWindow();
+            if (timed && !arriving) {
+                arriving = true;
+                Server.armPost(deadline);
+            } else if (state == Session.State.POST && !timed && arriving) {
+                arriving = false;
+                deadline.cancel();
+            }
+        }
+
+        /**
+         * Closes the connection when its deadline has passed
+         */
+        private void expired() {
+            if (key.isValid()) {
+                logger.warning(() -> "Deadline passed for client at " + addr);
+                close(false);
+            }
+        }
+
+        /**
+         * Sends as much pending output as the connection accepts
+         */
+        void write() {
+            outbox.flip();
+            try {
+                channel.write(outbox);
+            } catch (IOException ex) {
+                logger.warning(() -> "Unable to communicate: " +
+                        ex.getMessage());
+                close(false);
+                return;
+            } finally {
+                outbox.compact();
+            }
+            if (outbox.position() > 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else if (session.getState() == Session.State.CLOSED) {
+                close(true);
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Decodes a complete message from inbox and advances the session
+         *
+         * @param off index of the message in inbox
+         * @param len length of the message, including its terminator
+         */
+        private void handle(int off, int len) {
+            Message m;
+            try {
+                in.reset(inbox.array(), off, len);
+                m = readMessage(in);
+            } catch (MessageException ex) {
+                if (ex.getError() == null) {
+                    logger.warning(ex::getMessage);
+                } else {
+                    logger.warning(() -> "Received error: " +
+                            ex.getMessage());
+                }
+                close(false);
+                return;
+            }
+            String op = m.getClass().getSimpleName();
+            logger.fine(() -> "Received " + op + " from client at " + addr);
+
+            Message reply;
+            try {
+                reply = session.receive(m);
+            } catch (MessageException ex) {
+                logger.warning(ex::getMessage);
+                if (session.getState() == Session.State.CLOSED) {
+                    close(false);
+                }
+                return;
+            }
+
+            if (session.getState() == Session.State.POSTING) {
+                offer();
+            } else if (owed.isEmpty()) {
+                reply(reply);
+            } else {
+                // answer after the posts ahead of it
+                owed.add(new Owed(null, reply));
+            }
+        }
+
+        /**
+         * Queues the session's post for the writer and goes on reading while
+         * it is written. If the post queue is full, the post is held and
+         * offered again from the loop.
+         *
+         * @return true if the post was queued; false if it is held
+         */
+        private boolean offer() {
+            CompletableFuture<Boolean> done = Server.offer(session, addr);
+            holding = done == null;
+            if (holding) {
+                held.add(this);
+                return false;
+            }
+            session.submitted();
+            owed.add(new Owed(done, null));
+            if (!done.isDone()) {
+                done.thenRun(() -> execute(this::posted));
+            }
+            return true;
+        }
+
+        /**
+         * Offers the held post again, and once it is queued goes on with the
+         * input behind it
+         */
+        private void retry() {
+            if (key.isValid() && offer()) {
+                drain();
+            }
+        }
+
+        /**
+         * Encodes the replies owed to the client that are ready, oldest first,
+         * stopping at the first post not yet written
+         */
+        private void deliver() {
+            while (key.isValid() && !owed.isEmpty() &&
+                    (owed.peek().post() == null ||
+                            owed.peek().post().isDone())) {
+                Owed o = owed.remove();
+                reply(o.post() == null ? o.message() :
+                        session.posted(o.post().join()));
+            }
+        }
+
+        /**
+         * Answers written posts on the loop thread, along with any messages
+         * pipelined behind them
+         */
+        private void posted() {
+            if (!key.isValid()) {
+                return;
+            }
+            deliver();
+            if (!key.isValid()) {
+                return;
+            }
+            if (ended && owed.isEmpty()) {
+                endSession();
+            } else if (session.getState() == Session.State.CLOSED) {
+                write();
+            } else {
+                drain();
+            }
+        }
+
+        /**
+         * Encodes a reply into outbox, to be sent by the next write. An Error
+         * reply is logged, and the connection is closed once the reply is sent
+         * if the session is over.
+         *
+         * @param reply reply to be sent (null if an Error could not be built)
+         */
+        private void reply(Message reply) {
+            if (reply == null) {
+                close(false);
+                return;
+            }
+            if (reply instanceof Error) {
+                logger.severe(reply::toString);
+            } else {
+                String op = reply.getClass().getSimpleName();
+                logger.fine(() -> "Sending " + op + " to client at " + addr);
+            }
+            try {
+                writeMessage(out, reply);
+            } catch (MessageException ex) {
+                logger.warning(ex::getMessage);
+                close(false);
+            }
+        }
+
+        /**
+         * Returns outbox with room for at least n more bytes
+         *
+         * @param n number of bytes to be added
+         * @return outbox
+         */
+        private ByteBuffer reserve(int n) {
+            if (outbox.remaining() < n) {
+                outbox = grow(outbox, n);
+            }
+            return outbox;
+        }
+
+        /**
+         * Closes the connection
+         *
+         * @param graceful whether to close the connection gracefully (true)
+         *                 or forcefully (false)
+         */
+        void close(boolean graceful) {
+            logger.info(() -> "Closing connection to client at " + addr);
+            deadline.cancel();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                if (!graceful) {
+                    // discard unsent data and reset the connection
+                    channel.socket().setSoLinger(true, 0);
+                }
+                channel.close();
+            } catch (IOException ex) {
+                logger.warning(() -> "Unable to communicate: " +
+                        ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of a buffer (in write mode) with room for at least n
+     * more bytes
+     *
+     * @param buffer buffer to be grown
+     * @param n number of bytes to be added
+     * @return larger buffer holding the same bytes
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int n) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,
+                buffer.position() + n));
+        return larger.put(buffer.flip());
+    }
+}
@@ -0,0 +1,212 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Issues single-use challenge nonces. Each thread draws nonces in batches
+ * from its own securely seeded generator, so issuing threads never contend
+ * on a shared seed, and formats a whole batch at once into the bytes a
+ * Challenge encodes. Issued nonces are tracked until redeemed or expired, so
+ * none is outstanding twice and none can be redeemed twice. They are tracked
+ * in two buckets by issue time, each spanning at least a lifetime, so
+ * expired nonces are dropped a bucket at a time rather than searched for.
+ */
+final class Nonces {
+
+    /**
+     * Number of nonces drawn by a thread at once
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * Most decimal digits in a nonce
+     */
+    private static final int DIGITS = 19;
+
+    /**
+     * Nonces drawn by the current thread but not yet issued
+     */
+    private static final ThreadLocal<Batch> batches =
+            ThreadLocal.withInitial(Batch::new);
+
+    /**
+     * Issued, unredeemed nonces in buckets by issue time
+     *
+     * @param start time (in nanoseconds) the current bucket was started
+     * @param current expiry time (in nanoseconds) of each nonce issued since
+     *                start
+     * @param previous expiry time (in nanoseconds) of each nonce issued in
+     *                 the bucket before, all of which expire within a
+     *                 lifetime of start
+     */
+    private record Buckets(long start, ConcurrentHashMap<Long, Long> current,
+                           ConcurrentHashMap<Long, Long> previous) {}
+
+    /**
+     * Current buckets, replaced as a whole when a lifetime has passed
+     */
+    private final AtomicReference<Buckets> buckets;
+
+    /**
+     * Time (in nanoseconds) an issued nonce may be redeemed for
+     */
+    private final long ttl;
+
+    /**
+     * Creates a nonce service with nothing issued
+     *
+     * @param ttl time (in milliseconds) an issued nonce may be redeemed for
+     */
+    Nonces(long ttl) {
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.buckets = new AtomicReference<>(new Buckets(System.nanoTime(),
+                new ConcurrentHashMap<>(), new ConcurrentHashMap<>()));
+    }
+
+    /**
+     * Issues a nonce that is not already outstanding
+     *
+     * @return ISO-8859-1 bytes of the nonce's decimal digits, which belong to
+     * the caller
+     */
+    byte[] issue() {
+        Batch batch = batches.get();
+        while (true) {
+            if (batch.next == BATCH) {
+                batch.fill();
+            }
+            int i = batch.next++;
+            long now = System.nanoTime();
+            Buckets b = buckets(now);
+            Long key = batch.values[i];
+            if (!b.previous().containsKey(key) &&
+                    b.current().putIfAbsent(key, now + ttl) == null) {
+                return batch.nonces[i];
+            }
+        }
+    }
+
+    /**
+     * Redeems an issued nonce, which may not be redeemed again
+     *
+     * @param nonce digits of the nonce to be redeemed, as issued
+     * @return true if nonce was outstanding and has not expired; false
+     * otherwise
+     */
+    boolean redeem(byte[] nonce) {
+        long value = 0;
+        for (byte d : nonce) {
+            value = 10 * value + (d - '0');
+        }
+        long now = System.nanoTime();
+        Buckets b = buckets(now);
+        Long expiry = b.current().remove(value);
+        if (expiry == null) {
+            expiry = b.previous().remove(value);
+        }
+        return expiry != null && expiry - now >= 0;
+    }
+
+    /**
+     * Returns the current buckets, first starting a new bucket if the
+     * current one is at least a lifetime old. The previous bucket is then
+     * dropped, since every nonce in it was issued more than a lifetime ago.
+     *
+     * @param now current time (in nanoseconds)
+     * @return current buckets
+     */
+    private Buckets buckets(long now) {
+        Buckets b = buckets.get();
+        while (now - b.start() >= ttl) {
+            Buckets next = new Buckets(now, new ConcurrentHashMap<>(),
+                    b.current());
+            if (buckets.compareAndSet(b, next)) {
+                return next;
+            }
+            b = buckets.get();
+        }
+        return b;
+    }
+
+    /**
+     * Nonces drawn by one thread
+     */
+    private static final class Batch {
+
+        /**
+         * Generator for this thread's nonces
+         */
+        private final SecureRandom random;
+
+        /**
+         * Value of each nonce
+         */
+        private final long[] values = new long[BATCH];
+
+        /**
+         * Formatted nonces
+         */
+        private final byte[][] nonces = new byte[BATCH][];
+
+        /**
+         * Raw bytes of a batch
+         */
+        private final byte[] bytes = new byte[BATCH * Long.BYTES];
+
+        /**
+         * Digits of a nonce being formatted, right-aligned
+         */
+        private final byte[] digits = new byte[DIGITS];
+
+        /**
+         * Index of the next nonce to be issued
+         */
+        private int next = BATCH;
+
+        /**
+         * Creates an empty batch with a securely seeded generator
+         */
+        Batch() {
+            SecureRandom r;
+            try {
+                r = SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException ex) {
+                r = new SecureRandom();
+            }
+            this.random = r;
+        }
+
+        /**
+         * Draws and formats a new batch of nonces
+         */
+        void fill() {
+            random.nextBytes(bytes);
+            ByteBuffer raw = ByteBuffer.wrap(bytes);
+            for (int i = 0; i < BATCH; ++i) {
+                long v = raw.getLong() >>> 1;
+                values[i] = v;
+                int d = DIGITS;
+                do {
+                    digits[--d] = (byte) ('0' + v % 10);
+                    v /= 10;
+                } while (v != 0);
+                nonces[i] = Arrays.copyOfRange(digits, d, DIGITS);
+            }
+            next = 0;
+        }
+    }
+}
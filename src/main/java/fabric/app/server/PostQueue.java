@@ -0,0 +1,459 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server;
+
+import fabric.serialization.Bout;
+import fabric.serialization.Knowp;
+import fabric.serialization.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Bounded lock-free ring of posts from many connection threads, drained in
+ * batches by a single writer thread. Only the writer touches sequence
+ * numbers, y, and the Stitch feed, so posting threads never contend on a
+ * lock; they claim a slot with one compare-and-set and, when the ring is
+ * full, either wait for the writer to catch up or (on an event loop) hold the
+ * post and offer it again later. When posts are acknowledged once
+ * durable, the writer group commits: it gathers posts for a short window,
+ * writes them, and syncs the sequence counters and y once before any of
+ * them is acknowledged. Otherwise the counters are synced at a bounded
+ * interval after they change, whether or not more posts arrive.
+ */
+final class PostQueue implements Runnable {
+
+    /**
+     * Logger for Fabric server events
+     */
+    private static final Logger logger = Logger.getLogger("fabricServer");
+
+    /**
+     * Time (in nanoseconds) a poster waits before retrying a full ring
+     */
+    private static final long FULLWAIT = 100_000L;
+
+    /**
+     * Result of a post acknowledged as soon as it is queued
+     */
+    private static final CompletableFuture<Boolean> QUEUED =
+            CompletableFuture.completedFuture(true);
+
+    /**
+     * Result of a post submitted after the writer has stopped
+     */
+    private static final CompletableFuture<Boolean> FAILED =
+            CompletableFuture.completedFuture(false);
+
+    /**
+     * A queued post
+     *
+     * @param m Bout or Knowp to be posted
+     * @param userID id of user who sent m
+     * @param done completed with whether m was synced (null if the post was
+     *             acknowledged when queued)
+     */
+    private record Post(Message m, String userID,
+                        CompletableFuture<Boolean> done) {}
+
+    /**
+     * Ring slots, each null until a post is published in it
+     */
+    private final AtomicReferenceArray<Post> slots;
+
+    /**
+     * Mask mapping a position to its slot (capacity is a power of two)
+     */
+    private final int mask;
+
+    /**
+     * Position of the next slot to be claimed by a poster
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Position of the next slot to be taken by the writer (written only by
+     * the writer)
+     */
+    private volatile long head;
+
+    /**
+     * Whether the writer is parked waiting for posts
+     */
+    private volatile boolean parked;
+
+    /**
+     * Writer thread (null until run)
+     */
+    private volatile Thread writer;
+
+    /**
+     * Whether the writer has stopped, so that posts are failed instead of
+     * queued
+     */
+    private volatile boolean failed;
+
+    /**
+     * Password file of known users
+     */
+    private final UserFile users;
+
+    /**
+     * Sequence numbers of users
+     */
+    private final Counters counters;
+
+    /**
+     * Writer structure for writing client messages to html
+     */
+    private final Y y;
+
+    /**
+     * Stitch server to publish posts to
+     */
+    private final stitch.app.server.Server sServer;
+
+    /**
+     * Whether posts are acknowledged once synced to storage (true) or once
+     * queued (false)
+     */
+    private final boolean durable;
+
+    /**
+     * Longest time (in nanoseconds) a group commit waits for more posts
+     */
+    private final long groupWait;
+
+    /**
+     * Largest number of posts in a group commit
+     */
+    private final int groupSize;
+
+    /**
+     * Longest time (in nanoseconds) a counter update goes unsynced when posts
+     * are acknowledged once queued
+     */
+    private final long syncWait;
+
+    /**
+     * Whether counters have changed since they were last synced (used only by
+     * the writer)
+     */
+    private boolean unsynced;
+
+    /**
+     * Time (in nanoseconds) by which changed counters are synced (used only
+     * by the writer)
+     */
+    private long syncDue;
+
+    /**
+     * Creates an empty ring
+     *
+     * @param capacity smallest number of posts the ring can hold (rounded up
+     *                 to a power of two)
+     * @param users password file of known users
+     * @param counters sequence numbers of users
+     * @param y writer for posts
+     * @param sServer Stitch server to publish posts to
+     * @param durable whether posts are acknowledged once synced to storage
+     *                (true) or once queued (false)
+     * @param groupWait longest time (in nanoseconds) a group commit waits
+     *                  for more posts
+     * @param groupSize largest number of posts in a group commit
+     * @param syncWait longest time (in nanoseconds) a counter update goes
+     *                 unsynced when posts are acknowledged once queued
+     */
+    PostQueue(int capacity, UserFile users, Counters counters, Y y,
+              stitch.app.server.Server sServer, boolean durable,
+              long groupWait, int groupSize, long syncWait) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.users = users;
+        this.counters = counters;
+        this.y = y;
+        this.sServer = sServer;
+        this.durable = durable;
+        this.groupWait = groupWait;
+        this.groupSize = groupSize;
+        this.syncWait = syncWait;
+    }
+
+    /**
+     * Queues a post for the writer. May be called from any thread, and only
+     * blocks while the ring is full.
+     *
+     * @param m Bout or Knowp to be posted
+     * @param userID id of user who sent m
+     * @return completed with whether m was synced, or already completed
+     * with true if posts are acknowledged when queued (or with false if the
+     * writer has stopped)
+     */
+    CompletableFuture<Boolean> submit(Message m, String userID) {
+        CompletableFuture<Boolean> done;
+        while ((done = offer(m, userID)) == null) {
+            LockSupport.parkNanos(FULLWAIT);
+        }
+        return done;
+    }
+
+    /**
+     * Queues a post for the writer if the ring has room. May be called from
+     * any thread, and never blocks.
+     *
+     * @param m Bout or Knowp to be posted
+     * @param userID id of user who sent m
+     * @return completed with whether m was synced, or already completed
+     * with true if posts are acknowledged when queued (or with false if the
+     * writer has stopped); null if the ring is full
+     */
+    CompletableFuture<Boolean> offer(Message m, String userID) {
+        long t;
+        do {
+            if (failed) {
+                return FAILED;
+            }
+            t = tail.get();
+            if (t - head >= slots.length()) {
+                return null;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        Post post = new Post(m, userID,
+                durable ? new CompletableFuture<>() : null);
+        slots.set((int) t & mask, post);
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+        // publish before checking, so that a stopping writer either fails
+        // this post or is seen here
+        if (failed) {
+            return fail(post);
+        }
+        return durable ? post.done() : QUEUED;
+    }
+
+    /**
+     * Writes posts in batches as they are queued. A batch that cannot be
+     * written is failed and the writer goes on with the next. Never returns
+     * normally; if the writer itself fails, every queued and later post is
+     * failed.
+     */
+    @Override
+    public void run() {
+        writer = Thread.currentThread();
+        List<Post> batch = new ArrayList<>();
+        List<String> feed = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(take());
+                try {
+                    if (durable) {
+                        gather(batch);
+                    } else {
+                        for (Post p; batch.size() < slots.length() &&
+                                (p = poll()) != null; ) {
+                            batch.add(p);
+                        }
+                    }
+                    write(batch, feed);
+                    if (unsynced && System.nanoTime() - syncDue >= 0) {
+                        syncCounters();
+                    }
+                } catch (Throwable ex) {
+                    logger.severe(() -> "Unable to post batch: " + ex);
+                    for (Post p : batch) {
+                        fail(p);
+                    }
+                }
+                batch.clear();
+                feed.clear();
+            }
+        } finally {
+            failed = true;
+            for (Post p : batch) {
+                fail(p);
+            }
+            for (Post p; (p = poll()) != null; ) {
+                fail(p);
+            }
+        }
+    }
+
+    /**
+     * Reports a post as not written, unless its outcome is already known
+     *
+     * @param p post that failed
+     * @return result of the post
+     */
+    private static CompletableFuture<Boolean> fail(Post p) {
+        if (p.done() == null) {
+            return FAILED;
+        }
+        p.done().complete(false);
+        return p.done();
+    }
+
+    /**
+     * Adds posts to a group commit until it is full or its window closes
+     *
+     * @param batch group holding its first post
+     */
+    private void gather(List<Post> batch) {
+        long deadline = System.nanoTime() + groupWait;
+        while (batch.size() < groupSize) {
+            Post p = poll();
+            if (p == null) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return;
+                }
+                parked = true;
+                if ((p = poll()) == null) {
+                    LockSupport.parkNanos(this, left);
+                }
+                parked = false;
+            }
+            if (p != null) {
+                batch.add(p);
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of posts to y, flushes y once (syncing it if posts are
+     * acknowledged once durable), publishes the posts to the Stitch feed, and
+     * reports each outcome
+     *
+     * @param batch posts to be written
+     * @param feed empty list to collect Stitch posts in
+     */
+    private void write(List<Post> batch, List<String> feed) {
+        boolean[] ok = new boolean[batch.size()];
+        for (int i = 0; i < ok.length; ++i) {
+            Post p = batch.get(i);
+            try {
+                feed.add(render(p.m(), p.userID()));
+                ok[i] = true;
+            } catch (IOException | IllegalArgumentException ex) {
+                // a user removed by a reload may still be posting
+                logger.warning(() -> "Unable to post: " + ex.getMessage());
+            }
+        }
+        try {
+            if (durable) {
+                // sync counters first, so a crash can skip a sequence number
+                // but never repeat one already in y
+                counters.sync();
+                y.sync();
+            } else {
+                y.flush();
+                if (!unsynced) {
+                    unsynced = true;
+                    syncDue = System.nanoTime() + syncWait;
+                }
+            }
+            sServer.addPosts(feed);
+        } catch (IOException ex) {
+            logger.warning(() -> "Unable to post: " + ex.getMessage());
+            ok = new boolean[ok.length];
+        }
+        for (int i = 0; i < ok.length; ++i) {
+            if (batch.get(i).done() != null) {
+                batch.get(i).done().complete(ok[i]);
+            }
+        }
+    }
+
+    /**
+     * Applies a post to the user's sequence number and writes it to y
+     *
+     * @param m Bout or Knowp to be posted
+     * @param userID id of user who sent m
+     * @return post for the Stitch feed
+     * @throws IOException if I/O problem in post
+     * @throws IllegalArgumentException if userID is no longer known
+     */
+    private String render(Message m, String userID) throws IOException {
+        if (m instanceof Knowp) {
+            // update user sequence number and write Knowp to output
+            String status = userID + ": KNOWP " + users.current().update(userID);
+            y.update(status);
+            return status;
+        }
+        // write Bout to output
+        String status = userID + ": BOUT #" + ((Bout) m).getCategory();
+        y.updateWithImage(status, ((Bout) m).getImage());
+        return status;
+    }
+
+    /**
+     * Syncs changed counters to storage
+     */
+    private void syncCounters() {
+        unsynced = false;
+        try {
+            counters.sync();
+        } catch (UncheckedIOException ex) {
+            logger.warning(() -> "Unable to sync counters: " +
+                    ex.getMessage());
+        }
+    }
+
+    /**
+     * Takes the next post, parking until one is queued. Changed counters
+     * that fall due while waiting are synced.
+     *
+     * @return next post
+     */
+    private Post take() {
+        Post p;
+        while ((p = poll()) == null) {
+            // announce the park before checking again, so that a poster
+            // either sees the flag or its post is seen here
+            parked = true;
+            if ((p = poll()) == null) {
+                if (!unsynced) {
+                    LockSupport.park(this);
+                } else if (syncDue - System.nanoTime() > 0) {
+                    LockSupport.parkNanos(this, syncDue - System.nanoTime());
+                } else {
+                    syncCounters();
+                }
+            }
+            parked = false;
+            if (p != null) {
+                break;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Takes the next post if it has been published
+     *
+     * @return next post, or null if none is ready
+     */
+    private Post poll() {
+        int i = (int) head & mask;
+        Post p = slots.get(i);
+        if (p != null) {
+            slots.set(i, null);
+            head = head + 1;
+        }
+        return p;
+    }
+}
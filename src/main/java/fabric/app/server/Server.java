@@ -14,14 +14,19 @@ import fabric.serialization.*;
 import fabric.serialization.Error;
 
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.Date;
-import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.*;
 
 /**
@@ -35,34 +40,170 @@ public class Server extends MessageSender {
     private static final Logger logger = Logger.getLogger("fabricServer");
 
     /**
-     * Storage structure for uIDs, passwords, and seq numbers
+     * Password file of known users, reloaded when it changes
      */
-    private static Users users;
+    private static UserFile users;
 
     /**
-     * Writer structure for writing client messages to html
+     * Ring of posts drained by the writer thread
      */
-    private static Y y;
+    private static PostQueue posts;
 
     /**
-     * Random number generator for nonce generation
+     * Duration (in seconds) to block on socket reads
      */
-    private static final Random nonceGen = new Random(new Date().getTime());
+    private static final int TIMEOUT = 40;
 
     /**
-     * Duration (in seconds) to block on socket reads
+     * Mode argument for one pool thread per connection
      */
-    private static final int TIMEOUT = 40;
+    private static final String BLOCKING = "blocking";
 
     /**
-     * Error code for authentication errors
+     * Mode argument for non-blocking event loops
      */
-    private static final int AUTHERR = 500;
+    private static final String NIO = "nio";
 
     /**
-     * Error code for posting errors
+     * Mode argument for one virtual thread per connection
      */
-    private static final int POSTERR = 600;
+    private static final String VIRTUAL = "virtual";
+
+    /**
+     * Smallest number of posts the post ring holds (-Dfabric.ring)
+     */
+    private static final int RING = Math.max(1,
+            Integer.getInteger("fabric.ring", 1024));
+
+    /**
+     * Acknowledgement mode for posts acknowledged once queued
+     */
+    private static final String ENQUEUE = "enqueue";
+
+    /**
+     * Acknowledgement mode for posts acknowledged once synced to storage, the
+     * default
+     */
+    private static final String DURABLE = "durable";
+
+    /**
+     * Whether posts are acknowledged once synced to storage
+     * (-Dfabric.ack=durable) or once queued (-Dfabric.ack=enqueue)
+     */
+    private static final boolean ACKDURABLE = !ENQUEUE.equals(
+            System.getProperty("fabric.ack", DURABLE));
+
+    /**
+     * Longest time (in microseconds) a group commit waits for more posts
+     * before syncing (-Dfabric.groupwait)
+     */
+    private static final int GROUPWAIT = Math.max(0,
+            Integer.getInteger("fabric.groupwait", 2000));
+
+    /**
+     * Largest number of posts synced together (-Dfabric.groupsize)
+     */
+    private static final int GROUPSIZE = Math.max(1,
+            Integer.getInteger("fabric.groupsize", 256));
+
+    /**
+     * Largest window granted to pipelining clients (-Dfabric.window)
+     */
+    private static final int WINDOW = Math.max(1,
+            Integer.getInteger("fabric.window", 16));
+
+    /**
+     * Longest message (in bytes) an event loop buffers from a client before
+     * closing the connection (-Dfabric.maxmessage)
+     */
+    private static final int MAXMESSAGE = Math.max(1024,
+            Integer.getInteger("fabric.maxmessage", 64 << 20));
+
+    /**
+     * Number of accepted connections that may wait for a thread
+     * (-Dfabric.backlog)
+     */
+    private static final int BACKLOG = Math.max(1,
+            Integer.getInteger("fabric.backlog", 64));
+
+    /**
+     * Policy when the backlog is full (-Dfabric.admit): reject, pause, or
+     * shed
+     */
+    private static final String ADMIT = System.getProperty("fabric.admit",
+            "pause");
+
+    /**
+     * Time (in seconds) between admission metrics logs, or 0 for none
+     * (-Dfabric.metrics)
+     */
+    private static final int METRICS = Math.max(0,
+            Integer.getInteger("fabric.metrics", 60));
+
+    /**
+     * File holding users' sequence numbers across restarts
+     * (-Dfabric.counters)
+     */
+    private static final String COUNTERS = System.getProperty(
+            "fabric.counters", "counters.dat");
+
+    /**
+     * Longest time (in milliseconds) a sequence number updated by a post
+     * acknowledged once queued goes before it is synced to the counter file
+     * (-Dfabric.countersync)
+     */
+    private static final int COUNTERSYNC = Math.max(1,
+            Integer.getInteger("fabric.countersync", 1000));
+
+    /**
+     * Time (in milliseconds) the password file must go unchanged before it
+     * is reloaded (-Dfabric.reloadwait)
+     */
+    private static final int RELOADWAIT = Math.max(0,
+            Integer.getInteger("fabric.reloadwait", 500));
+
+    /**
+     * Time (in milliseconds) allowed for ID to arrive once connected
+     * (-Dfabric.idwait)
+     */
+    private static final int IDWAIT = Math.max(1,
+            Integer.getInteger("fabric.idwait", 5000));
+
+    /**
+     * Time (in milliseconds) allowed for CRED to arrive once challenged
+     * (-Dfabric.credwait)
+     */
+    private static final int CREDWAIT = Math.max(1,
+            Integer.getInteger("fabric.credwait", 5000));
+
+    /**
+     * Time (in milliseconds) allowed for a post to arrive once it starts
+     * arriving, before any allowance for its size (-Dfabric.postwait)
+     */
+    private static final int POSTWAIT = Math.max(1,
+            Integer.getInteger("fabric.postwait", 5000));
+
+    /**
+     * Slowest rate (in bytes per second) a post may arrive at, beyond
+     * POSTWAIT (-Dfabric.minrate)
+     */
+    private static final int MINRATE = Math.max(1,
+            Integer.getInteger("fabric.minrate", 16384));
+
+    /**
+     * Issuer of challenge nonces, each redeemable until CRED is due
+     */
+    private static final Nonces nonces = new Nonces(CREDWAIT);
+
+    /**
+     * Timer enforcing per-phase connection deadlines
+     */
+    private static final TimerWheel timers = new TimerWheel();
+
+    /**
+     * Error code for connections turned away by admission control
+     */
+    private static final int BUSYERR = 700;
 
     /**
      * Name of file where Fabric messages are written
@@ -91,14 +232,21 @@ public class Server extends MessageSender {
     /**
      * Main method of Fabric server
      *
-     * @param args server port, thread pool size, and password file
+     * @param args server port, thread pool size, password file, and optional
+     *             mode (blocking, the default; nio, in which case the thread
+     *             pool size is the number of event loops; or virtual, in
+     *             which case it is the maximum number of concurrent
+     *             connections, each served by its own virtual thread)
      */
     public static void main(String[] args) {
         // Argument checks
-        if (args.length != 3 || !args[0].matches("^[0-9]+$") ||
-                !args[1].matches("^[0-9]+$")) {
+        if (args.length < 3 || args.length > 4 ||
+                !args[0].matches("^[0-9]+$") || !args[1].matches("^[0-9]+$") ||
+                (args.length == 4 && !args[3].equals(BLOCKING) &&
+                        !args[3].equals(NIO) && !args[3].equals(VIRTUAL))) {
             logger.severe(() -> "Unable to start: Usage: java Server <port> " +
-                    "<thread pool size> <password filename>");
+                    "<thread pool size> <password filename> [" + BLOCKING +
+                    "|" + NIO + "|" + VIRTUAL + "]");
             System.exit(1);
         }
         if (Integer.parseInt(args[1]) < 1) {
@@ -107,32 +255,57 @@ public class Server extends MessageSender {
             System.exit(1);
         }
 
-        // Password file read
+        // Password file read, with sequence numbers recovered from the
+        // counter file
+        Counters counters = null;
         try {
-            users = new Users(args[2]);
+            counters = new Counters(COUNTERS);
+            users = new UserFile(args[2], RELOADWAIT, counters);
         } catch (IOException ex) {
             logger.severe(() -> "Unable to start: " + ex.getMessage());
             System.exit(1);
         }
+        new Thread(users, "fabric-users").start();
+
+        stitch.app.server.Server sServer =
+                new stitch.app.server.Server(Integer.parseInt(args[0]));
+        Thread stitch = new Thread(sServer);
+        stitch.start();
+        new Thread(timers, "fabric-timer").start();
 
         // Writer opening
         try {
-            y = new Y(OUTPUT);
+            posts = new PostQueue(RING, users, counters, new Y(OUTPUT),
+                    sServer, ACKDURABLE, GROUPWAIT * 1000L, GROUPSIZE,
+                    COUNTERSYNC * 1_000_000L);
         } catch (FileNotFoundException ex) {
             logger.severe(() -> "Unable to start: " + ex.getMessage());
             System.exit(1);
         }
+        new Thread(posts, "fabric-writer").start();
 
-        stitch.app.server.Server sServer =
-                new stitch.app.server.Server(Integer.parseInt(args[0]));
-        Thread stitch = new Thread(sServer);
-        stitch.start();
+        if (args.length == 4 && args[3].equals(NIO)) {
+            runEventLoops(Integer.parseInt(args[0]),
+                    Integer.parseInt(args[1]));
+        }
+
+        // Connections wait in a bounded queue for a pool thread, or in
+        // virtual mode for one of a bounded number of virtual threads
+        Admission admission = null;
+        try {
+            admission = new Admission(Integer.parseInt(args[1]), BACKLOG,
+                    Admission.Policy.valueOf(ADMIT.toUpperCase(Locale.ROOT)),
+                    args.length == 4 && args[3].equals(VIRTUAL), Server::run,
+                    Server::refuse, METRICS);
+        } catch (IllegalArgumentException ex) {
+            logger.severe(() -> "Unable to start: Invalid admission policy " +
+                    ADMIT);
+            System.exit(1);
+        }
 
         // Open server socket and wait for client connections
-        try ( ServerSocket serverSocket = new ServerSocket(
-                    Integer.parseInt(args[0]));
-                ExecutorService threads = Executors
-                    .newFixedThreadPool(Integer.parseInt(args[1])) ) {
+        try (ServerSocket serverSocket = new ServerSocket(
+                Integer.parseInt(args[0]))) {
             do {
                 try {
                     // Accept new client
@@ -140,8 +313,8 @@ public class Server extends MessageSender {
                     logger.info(() -> "New client: " +
                             client.getInetAddress().getHostAddress() + ":" +
                             client.getPort());
-                    // Delegate client to thread
-                    threads.submit(() -> run(client, sServer));
+                    // Queue client for a thread
+                    admission.admit(client);
                 } catch (IOException ex) {
                     logger.warning(() -> "Unable to communicate: " +
                             ex.getMessage());
@@ -153,101 +326,367 @@ public class Server extends MessageSender {
         }
     }
 
+    /**
+     * Accepts client connections and spreads them across non-blocking event
+     * loops. Never returns.
+     *
+     * @param port server port
+     * @param loops number of event loops
+     */
+    private static void runEventLoops(int port, int loops) {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            EventLoop[] eventLoops = new EventLoop[loops];
+            for (int i = 0; i < loops; ++i) {
+                eventLoops[i] = new EventLoop(users, nonces, WINDOW,
+                        MAXMESSAGE, timers, TIMEOUT * 1000L);
+                new Thread(eventLoops[i], "fabric-loop-" + i).start();
+            }
+            for (int i = 0; ; i = (i + 1) % loops) {
+                try {
+                    // Accept new client
+                    SocketChannel client = serverChannel.accept();
+                    logger.info(() -> "New client: " +
+                            client.socket().getInetAddress().getHostAddress() +
+                            ":" + client.socket().getPort());
+                    // Delegate client to event loop
+                    eventLoops[i].add(client);
+                } catch (IOException ex) {
+                    logger.warning(() -> "Unable to communicate: " +
+                            ex.getMessage());
+                }
+            }
+        } catch (IOException ex) {
+            logger.severe(() -> "Unable to start: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
     /**
      * Main method for server threads to accept and send messages
      *
      * @param client Socket hosting client connection
      */
-    private static void run(Socket client, stitch.app.server.Server sServer) {
+    private static void run(Socket client) {
+        // declare client socket address and deadline, which aborts the
+        // connection from the timer thread
+        String addr = client.getInetAddress().getHostAddress() + ":" +
+                client.getPort();
+        TimerWheel.Deadline deadline = timers.deadline(() -> {
+            logger.warning(() -> "Deadline passed for client at " + addr);
+            closeClient(client, false);
+        });
+
         MessageInput in;
         MessageOutput out;
         try {
-            in = new MessageInput(client.getInputStream());
+            in = new MessageInput(new FilterInputStream(
+                    client.getInputStream()) {
+                @Override
+                public int read(byte[] b, int off, int len)
+                        throws IOException {
+                    int n = super.read(b, off, len);
+                    deadline.received(n);
+                    return n;
+                }
+            });
             out = new MessageOutput(client.getOutputStream());
             client.setSoTimeout(TIMEOUT * 1000);
+            configureSocket(client);
         } catch (IOException ex) {
             logger.warning(() -> "Unable to communicate: " + ex.getMessage());
             closeClient(client, false);
             return;
         }
 
-        // declare general message holder and client socket address
+        // declare general message holder and session
         Message m;
-        String addr = client.getInetAddress().getHostAddress() + ":" +
-                client.getPort();
+        Session session = new Session(users.current(), nonces, WINDOW);
+        Session.State phase = session.getState();
+        armPhase(deadline, phase);
 
         // Send initial Fabric message with version to client
-        logger.fine(() -> "Sending Ack to client at " + addr);
-        if (!sendFabric(out, client)) {
+        logger.fine(() -> "Sending Fabric to client at " + addr);
+        if (!sendMessage(out, session.start(), client)) {
+            deadline.cancel();
             return;
         }
 
-        // Read next client message (ID with userID expected)
-        if ((m = receiveMessage(in, client, ID.class)) == null) {
-            return;
-        }
-        logger.fine(() -> "Received Id from client at " + addr);
+        // Step through ID, CRED, and any number of BOUT/KNOWP until the
+        // session closes. Posts pipelined by the client are submitted without
+        // waiting for earlier ones, and answered in order as they are written.
+        Queue<CompletableFuture<Boolean>> pending = new ArrayDeque<>();
+        while (session.getState() != Session.State.CLOSED) {
+            if (!sendPosted(in, out, pending, false, session, client, addr)) {
+                deadline.cancel();
+                return;
+            }
+            if (session.getState() == Session.State.POST) {
+                if (sessionEnded(in, session, addr)) {
+                    break;
+                }
+                armPost(deadline);
+            }
+            if ((m = receiveMessage(in, client)) == null) {
+                deadline.cancel();
+                return;
+            }
+            String op = m.getClass().getSimpleName();
+            logger.fine(() -> "Received " + op + " from client at " + addr);
+
+            // any other reply follows those for earlier posts
+            if (!(m instanceof Bout || m instanceof Knowp) &&
+                    !sendPosted(in, out, pending, true, session, client,
+                            addr)) {
+                deadline.cancel();
+                return;
+            }
+            Message reply;
+            try {
+                reply = session.receive(m);
+            } catch (MessageException ex) {
+                logger.warning(ex::getMessage);
+                if (session.getState() == Session.State.CLOSED) {
+                    deadline.cancel();
+                    closeClient(client, false);
+                    return;
+                }
+                continue;
+            }
 
-        // Check if userID is valid, send error message if not
-        String userID = ((ID) m).getID();
-        if (!users.contains(userID)) {
-            sendServerError(out, AUTHERR, "No such user " + userID, client);
-            return;
-        }
+            // Submit received Bout or Knowp, to be answered once written
+            boolean posting = session.getState() == Session.State.POSTING;
+            if (posting) {
+                pending.add(post(session, addr));
+                session.submitted();
+            }
+            if (session.getState() != phase ||
+                    phase == Session.State.POST) {
+                phase = session.getState();
+                armPhase(deadline, phase);
+            }
+            if (posting) {
+                continue;
+            }
 
-        // Send Challenge message with random nonce to client
-        String nonce = String.valueOf(nonceGen.nextInt(Integer.MAX_VALUE));
-        logger.fine(() -> "Sending Challenge to client at " + addr);
-        if (!sendChallenge(out, nonce, client)) {
-            return;
+            // Hold replies while the client has pipelined more messages, so
+            // that they go out together
+            if (in.available() > 0) {
+                out.cork();
+            }
+            if (!sendReply(out, reply, session, client, addr) ||
+                    (in.available() == 0 && !flushMessages(out, client))) {
+                deadline.cancel();
+                return;
+            }
         }
 
-        // Read next client message (Credentials with hash expected)
-        if ((m = receiveMessage(in, client, Credentials.class)) == null) {
-            return;
-        }
-        logger.fine(() -> "Received Credentials from client at " + addr);
+        // Close client connection gracefully
+        deadline.cancel();
+        closeClient(client, true);
+    }
 
-        // Validate hash
-        String hash = ((Credentials) m).getHash();
-        if (hash == null || !hash.equals(users.hash(nonce, userID))) {
-            sendServerError(out, AUTHERR, "Unable to authenticate", client);
-            return;
+    /**
+     * Sends the replies for submitted posts that have been written, oldest
+     * first. Waits for the oldest while the session's window is full, and for
+     * every one when asked to or when the client has nothing more buffered,
+     * in which case all held replies are then written to the client.
+     *
+     * @param in MessageInput the client's messages are decoded from
+     * @param out MessageOutput to which replies are encoded
+     * @param pending outcomes of submitted posts, oldest first
+     * @param all whether to wait for every pending post
+     * @param session session the posts are from
+     * @param client client Socket to be closed if error occurs
+     * @param addr client socket address (for logging)
+     * @return true if the session can continue; false if the connection was
+     * closed
+     */
+    private static boolean sendPosted(MessageInput in, MessageOutput out,
+                                      Queue<CompletableFuture<Boolean>>
+                                              pending, boolean all,
+                                      Session session, Socket client,
+                                      String addr) {
+        boolean idle = in.available() == 0;
+        while (!pending.isEmpty() && (all || idle || pending.peek().isDone() ||
+                session.getPending() >= session.getWindow())) {
+            // hold replies so that they go out together
+            out.cork();
+            if (!sendReply(out, session.posted(pending.remove().join()),
+                    session, client, addr)) {
+                return false;
+            }
         }
-        logger.fine(() -> "Authenticated client at " + addr);
+        return !idle || flushMessages(out, client);
+    }
 
-        // Send Ack message to client
-        logger.fine(() -> "Sending Ack to client at " + addr);
-        if (!sendAck(out, client)) {
-            return;
+    /**
+     * Turns away a connection not admitted by sending Error and closing it
+     * forcefully
+     *
+     * @param client connection not admitted
+     */
+    private static void refuse(Socket client) {
+        logger.warning(() -> "Server busy, refusing client at " +
+                client.getInetAddress().getHostAddress() + ":" +
+                client.getPort());
+        try {
+            sendServerError(new MessageOutput(client.getOutputStream()),
+                    new Error(BUSYERR, "Server busy"), client);
+        } catch (IOException | ValidationException ex) {
+            logger.warning(() -> "Unable to communicate: " + ex.getMessage());
+            closeClient(client, false);
         }
+    }
 
-        // Read next client message (Bout with category and image
-        // or Knowp expected)
-        if ((m = receiveMessage(in, client, Bout.class,
-                Knowp.class)) == null) {
-            return;
+    /**
+     * Arms a connection's deadline for the phase its session has entered: ID
+     * and CRED must each arrive within a fixed time, and otherwise nothing is
+     * timed until a post starts arriving
+     *
+     * @param deadline deadline of the connection
+     * @param phase phase the session has entered
+     */
+    static void armPhase(TimerWheel.Deadline deadline, Session.State phase) {
+        switch (phase) {
+            case ID -> deadline.arm(IDWAIT, 0);
+            case CREDENTIALS -> deadline.arm(CREDWAIT, 0);
+            default -> deadline.cancel();
         }
-        String op = m.getClass().getSimpleName();
-        logger.fine(() -> "Recevied " + op + " from client at " + addr);
+    }
 
-        // Process received Bout or Knowp
+    /**
+     * Arms a connection's deadline for a post that has started arriving,
+     * allowing more time the larger it turns out to be
+     *
+     * @param deadline deadline of the connection
+     */
+    static void armPost(TimerWheel.Deadline deadline) {
+        deadline.arm(POSTWAIT, 1_000_000_000L / MINRATE);
+    }
+
+    /**
+     * Checks whether an authenticated client has ended its session, either by
+     * closing the connection or by staying idle for longer than the timeout
+     *
+     * @param in MessageInput object from which to decode
+     * @param session session waiting for BOUT or KNOWP
+     * @param addr client socket address (for logging)
+     * @return true if the session has ended; false if another message is
+     * arriving
+     */
+    private static boolean sessionEnded(MessageInput in, Session session,
+                                        String addr) {
         try {
-            postMessage(m, userID, sServer);
-            logger.fine(() -> "Posted message from client at " + addr);
+            if (!in.isEndOfStream()) {
+                return false;
+            }
+            logger.info(() -> "Client at " + addr + " ended session after " +
+                    session.getPostCount() + " posts");
+        } catch (SocketTimeoutException ex) {
+            logger.info(() -> "Client at " + addr + " idle, ending session " +
+                    "after " + session.getPostCount() + " posts");
         } catch (IOException ex) {
-            sendServerError(out, POSTERR, "Could not post message", client);
-            return;
+            logger.warning(() -> "Unable to communicate: " + ex.getMessage());
         }
+        session.end();
+        return true;
+    }
 
-        // Send Ack message to client
-        logger.fine(() -> "Sending Ack to client at " + addr);
-        if (!sendAck(out, client)) {
-            return;
+    /**
+     * Queues the message a session is waiting on for the writer thread,
+     * waiting while the queue is full
+     *
+     * @param session session that is posting
+     * @param addr client socket address (for logging)
+     * @return completed with whether the message was posted, once it is
+     * written or (if posts are acknowledged when queued) at once
+     */
+    static CompletableFuture<Boolean> post(Session session, String addr) {
+        return logged(posts.submit(session.getPost(), session.getUserID()),
+                addr);
+    }
+
+    /**
+     * Queues the message a session is waiting on for the writer thread if
+     * the queue has room, without waiting
+     *
+     * @param session session that is posting
+     * @param addr client socket address (for logging)
+     * @return completed with whether the message was posted, once it is
+     * written or (if posts are acknowledged when queued) at once; null if
+     * the queue is full
+     */
+    static CompletableFuture<Boolean> offer(Session session, String addr) {
+        CompletableFuture<Boolean> done = posts.offer(session.getPost(),
+                session.getUserID());
+        return done == null ? null : logged(done, addr);
+    }
+
+    /**
+     * Logs each message that is posted
+     *
+     * @param done completed with whether the message was posted
+     * @param addr client socket address (for logging)
+     * @return completed with whether the message was posted, after logging
+     */
+    private static CompletableFuture<Boolean> logged(
+            CompletableFuture<Boolean> done, String addr) {
+        return done.thenApply(ok -> {
+            if (ok) {
+                logger.fine(() -> "Posted message from client at " + addr);
+            }
+            return ok;
+        });
+    }
+
+    /**
+     * Sends a session reply to the client. An Error reply is logged, and if
+     * it ends the session the connection is closed forcefully.
+     *
+     * @param out MessageOutput to which Message is encoded
+     * @param reply reply to be sent (null if an Error could not be built)
+     * @param session session the reply is from
+     * @param client client Socket to be closed if error occurs
+     * @param addr client socket address (for logging)
+     * @return true if the session can continue; false if the connection was
+     * closed
+     */
+    private static boolean sendReply(MessageOutput out, Message reply,
+                                     Session session, Socket client,
+                                     String addr) {
+        if (reply == null || (reply instanceof Error &&
+                session.getState() == Session.State.CLOSED)) {
+            sendServerError(out, (Error) reply, client);
+            return false;
+        }
+        if (reply instanceof Error) {
+            logger.severe(reply::toString);
+        } else {
+            String op = reply.getClass().getSimpleName();
+            logger.fine(() -> "Sending " + op + " to client at " + addr);
         }
+        return sendMessage(out, reply, client);
+    }
 
-        // Close client connection gracefully
-        closeClient(client, true);
+    /**
+     * Writes any held messages to the client, closing the socket if an error
+     * occurs
+     *
+     * @param out MessageOutput holding messages
+     * @param client client Socket to be closed if error occurs
+     * @return true if the messages were written; false if the connection was
+     * closed
+     */
+    private static boolean flushMessages(MessageOutput out, Socket client) {
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            logger.warning(() -> "Unable to communicate: " + ex.getMessage());
+            closeClient(client, false);
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -281,63 +720,19 @@ public class Server extends MessageSender {
      *
      * @param in MessageInput object from which to decode
      * @param client client Socket to be closed if error occurs
-     * @param a array of expected message types
-     * @return the message received
-     */
-    private static Message receiveMessage(MessageInput in,
-                                          Socket client,
-                                          Class<? extends Message>... a) {
-        Message m = null;
-        // Try to read message until successful or connection is terminated
-        // by closeClient
-        while (m == null) {
-            // Read next available message
-            try {
-                m = readMessage(in);
-            } catch (MessageException ex) {
-                if (ex.getError() == null) {
-                    logger.warning(ex::getMessage);
-                } else {
-                    logger.warning(() -> "Received error: " + ex.getMessage());
-                }
-                closeClient(client, false);
-                break;
-            }
-
-            // Check message type if message successfully read
-            try {
-                checkMessageType(m, a);
-            } catch (MessageException ex) {
+     * @return the message received, or null if the connection was closed
+     */
+    private static Message receiveMessage(MessageInput in, Socket client) {
+        try {
+            return readMessage(in);
+        } catch (MessageException ex) {
+            if (ex.getError() == null) {
                 logger.warning(ex::getMessage);
-                m = null;
+            } else {
+                logger.warning(() -> "Received error: " + ex.getMessage());
             }
-        }
-        return m;
-    }
-
-    /**
-     * Uses y to post a user Bout or Knwop to the html output file
-     *
-     * @param m Bout or Knowp received to be posted
-     * @param userID id of user who sent m
-     * @throws IOException if I/O problem in post
-     */
-    private static synchronized void postMessage(
-            Message m, String userID, stitch.app.server.Server sServer)
-            throws IOException {
-        if (m instanceof fabric.serialization.Knowp) {
-            // update user sequence number and write Knowp to output
-            users.update(userID);
-            y.update(userID + ": KNOWP " +
-                    users.getSequence(userID));
-            sServer.addPost(userID + ": KNOWP " +
-                    users.getSequence(userID));
-        } else {
-            // write Bout to output
-            y.updateWithImage(userID + ": BOUT #" +
-                    ((Bout) m).getCategory(), ((Bout) m).getImage());
-            sServer.addPost(userID + ": BOUT #" +
-                    ((Bout) m).getCategory());
+            closeClient(client, false);
+            return null;
         }
     }
 
@@ -362,77 +757,23 @@ public class Server extends MessageSender {
     }
 
     /**
-     * Sends Fabric message to client
-     *
-     * @param out MessageOutput to which Message is encoded
-     * @param client client Socket to be closed if error occurs
-     */
-    private static boolean sendFabric(MessageOutput out, Socket client) {
-        Fabric fabric = new Fabric();
-
-        return sendMessage(out, fabric, client);
-    }
-
-    /**
-     * Sends Challenge message to client
-     *
-     * @param out MessageOutput to which Message is encoded
-     * @param nonce random nonce for client to use in credentials hash
-     * @param client client Socket to be closed if error occurs
-     */
-    private static boolean sendChallenge(MessageOutput out, String nonce,
-                                         Socket client) {
-        Challenge challenge;
-
-        // Create Challenge to be sent to client
-        try {
-            challenge = new Challenge(nonce);
-        } catch (ValidationException ex) {
-            logger.warning(() -> "Validation failed: " + ex.getMessage());
-            return false;
-        }
-
-        // attempt to send Challenge to client
-        return sendMessage(out, challenge, client);
-    }
-
-    /**
-     * Sends Ack message to client
-     *
-     * @param out MessageOutput to which Message is encoded
-     * @param client client Socket to be closed if error occurs
-     */
-    private static boolean sendAck(MessageOutput out, Socket client) {
-        Ack ack = new Ack();
-
-        return sendMessage(out, ack, client);
-    }
-
-    /**
-     * Sends Error message to client
+     * Sends Error message to client and closes the connection forcefully
      *
      * @param out MessageOutput to which Message is encoded
-     * @param code error code
-     * @param message error message
-     * @param client client Socket to be closed if error occurs
+     * @param error Error to be sent (null if it could not be built)
+     * @param client client Socket to be closed
      */
-    private static void sendServerError(MessageOutput out, int code,
-                                           String message, Socket client) {
-        Error error = null;
-        // Create Error to be sent to client
-        try {
-            error = new Error(code, message);
-        } catch (ValidationException ex) {
-            logger.warning(() -> "Validation failed: " + ex.getMessage());
-        }
-
-        // log Error if successfully created
+    private static void sendServerError(MessageOutput out, Error error,
+                                        Socket client) {
+        // log and attempt to send Error to client if successfully created,
+        // along with any replies held before it
         if (error != null) {
             logger.severe(error::toString);
+            sendMessage(out, error, client);
+        }
+        if (!client.isClosed()) {
+            flushMessages(out, client);
         }
-
-        // attempt to send Error to client
-        sendMessage(out, error, client);
         closeClient(client, false);
     }
 
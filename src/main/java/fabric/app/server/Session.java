@@ -0,0 +1,337 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server;
+
+import fabric.app.MessageException;
+import fabric.serialization.*;
+import fabric.serialization.Error;
+
+/**
+ * Server side of a Fabric session (FABRIC, ID, CLNG, CRED, ACK, then any
+ * number of BOUT or KNOWP, each answered by an ACK), independent of how
+ * messages are read and written. An authenticated client may send WINDOW to
+ * pipeline posts; posts are still answered in order, but a failed post then
+ * gets its own ERROR rather than ending the session. The caller sends
+ * start(), passes each client message to receive and sends back whatever it
+ * returns. Once the session is posting, the caller submits getPost(), calls
+ * submitted, and may go on receiving while fewer than getWindow() posts are
+ * pending; it reports the outcome of each pending post to posted, oldest
+ * first, and sends back the reply. While waiting for BOUT or KNOWP, the client
+ * may end the session by closing the connection, and the caller may end it
+ * once the client has been idle too long.
+ */
+final class Session {
+
+    /**
+     * Error code for authentication errors
+     */
+    static final int AUTHERR = 500;
+
+    /**
+     * Error code for posting errors
+     */
+    static final int POSTERR = 600;
+
+    /**
+     * Stage of the exchange
+     */
+    enum State {
+        /**
+         * Waiting for ID
+         */
+        ID,
+        /**
+         * Waiting for CRED
+         */
+        CREDENTIALS,
+        /**
+         * Authenticated and waiting for BOUT or KNOWP (the session may end
+         * cleanly here)
+         */
+        POST,
+        /**
+         * Waiting for the caller to submit a post
+         */
+        POSTING,
+        /**
+         * Exchange is over and the connection should be closed
+         */
+        CLOSED
+    }
+
+    /**
+     * Storage structure for uIDs, passwords, and seq numbers
+     */
+    private final Users users;
+
+    /**
+     * Issuer of challenge nonces
+     */
+    private final Nonces nonces;
+
+    /**
+     * Current stage of the exchange
+     */
+    private State state = State.ID;
+
+    /**
+     * ID of the user (null until ID is received)
+     */
+    private String userID;
+
+    /**
+     * Digits of the nonce sent in the challenge (null until ID is accepted)
+     */
+    private byte[] nonce;
+
+    /**
+     * BOUT or KNOWP waiting to be posted (null if none)
+     */
+    private Message post;
+
+    /**
+     * Number of posts submitted whose outcome has not been reported
+     */
+    private int pending;
+
+    /**
+     * Number of messages posted in this session
+     */
+    private int postCount;
+
+    /**
+     * Largest window granted to the client
+     */
+    private final int maxWindow;
+
+    /**
+     * Number of posts the client may send ahead of their ACKs
+     */
+    private int window = 1;
+
+    /**
+     * Creates a session waiting for the client's ID
+     *
+     * @param users known users
+     * @param nonces issuer of challenge nonces
+     * @param maxWindow largest window granted to the client
+     */
+    Session(Users users, Nonces nonces, int maxWindow) {
+        this.users = users;
+        this.nonces = nonces;
+        this.maxWindow = maxWindow;
+    }
+
+    /**
+     * Returns the message that opens the exchange
+     *
+     * @return Fabric message with version
+     */
+    Message start() {
+        return Fabric.FABRIC;
+    }
+
+    /**
+     * Advances the exchange with the next client message
+     *
+     * @param m message received from the client
+     * @return message to send to the client, or null if none (while posting)
+     * @throws MessageException if m is not expected at this stage (the
+     * session is unchanged) or a reply cannot be built (the session is
+     * closed)
+     */
+    Message receive(Message m) throws MessageException {
+        switch (state) {
+            case ID -> {
+                expect(m, ID.class);
+                userID = ((ID) m).getID();
+                if (!users.contains(userID)) {
+                    return fail(AUTHERR, "No such user " + userID);
+                }
+                nonce = nonces.issue();
+                state = State.CREDENTIALS;
+                try {
+                    return new Challenge(nonce);
+                } catch (ValidationException ex) {
+                    state = State.CLOSED;
+                    throw new MessageException("Validation failed: " +
+                            ex.getMessage(), ex);
+                }
+            }
+            case CREDENTIALS -> {
+                expect(m, Credentials.class);
+                String hash = ((Credentials) m).getHash();
+                if (!nonces.redeem(nonce)) {
+                    return fail(AUTHERR, "Challenge expired");
+                }
+                if (!users.verify(userID, nonce, hash)) {
+                    return fail(AUTHERR, "Unable to authenticate");
+                }
+                state = State.POST;
+                return Ack.ACK;
+            }
+            case POST -> {
+                expect(m, Bout.class, Knowp.class, Window.class);
+                if (m instanceof Window w) {
+                    window = Math.min(w.getSize(), maxWindow);
+                    try {
+                        return new Window(window);
+                    } catch (ValidationException ex) {
+                        state = State.CLOSED;
+                        throw new MessageException("Validation failed: " +
+                                ex.getMessage(), ex);
+                    }
+                }
+                post = m;
+                state = State.POSTING;
+                return null;
+            }
+            default -> throw new MessageException("Unexpected message: " + m,
+                    m);
+        }
+    }
+
+    /**
+     * Records that the waiting post has been submitted, after which the
+     * session waits for the next message while the post is pending
+     *
+     * @throws IllegalStateException if the session is not posting
+     */
+    void submitted() throws IllegalStateException {
+        if (state != State.POSTING) {
+            throw new IllegalStateException("Not posting: " + state);
+        }
+        post = null;
+        ++pending;
+        state = State.POST;
+    }
+
+    /**
+     * Finishes the oldest pending post and returns the reply for the client.
+     * A failed post ends the session unless the client is pipelining.
+     *
+     * @param ok whether the post was written
+     * @return Ack if ok; Error otherwise
+     * @throws IllegalStateException if no post is pending
+     */
+    Message posted(boolean ok) throws IllegalStateException {
+        if (pending == 0) {
+            throw new IllegalStateException("No post pending");
+        }
+        --pending;
+        if (!ok) {
+            State before = state;
+            Message error = fail(POSTERR, "Could not post message");
+            if (window > 1 && error != null) {
+                state = before;
+            }
+            return error;
+        }
+        ++postCount;
+        return Ack.ACK;
+    }
+
+    /**
+     * Ends the session without an error, as when the client closes the
+     * connection or goes idle between posts
+     */
+    void end() {
+        post = null;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Returns the number of messages posted in this session
+     *
+     * @return number of messages posted
+     */
+    int getPostCount() {
+        return postCount;
+    }
+
+    /**
+     * Returns the number of posts submitted whose outcome has not been
+     * reported
+     *
+     * @return number of pending posts
+     */
+    int getPending() {
+        return pending;
+    }
+
+    /**
+     * Returns the number of posts the client may send ahead of their ACKs
+     *
+     * @return window size (1 unless the client asked for more)
+     */
+    int getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the current stage of the exchange
+     *
+     * @return current stage
+     */
+    State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the ID of the user
+     *
+     * @return user ID, or null if not yet received
+     */
+    String getUserID() {
+        return userID;
+    }
+
+    /**
+     * Returns the message waiting to be posted
+     *
+     * @return BOUT or KNOWP, or null if not posting
+     */
+    Message getPost() {
+        return post;
+    }
+
+    /**
+     * Checks that a message is one of the types expected at this stage
+     *
+     * @param m message to be checked
+     * @param a expected message types
+     * @throws MessageException if m is not of an expected type
+     */
+    @SafeVarargs
+    private static void expect(Message m, Class<? extends Message>... a)
+            throws MessageException {
+        for (Class<? extends Message> c : a) {
+            if (m.getClass() == c) {
+                return;
+            }
+        }
+        throw new MessageException("Unexpected message: " + m, m);
+    }
+
+    /**
+     * Closes the session with an error for the client
+     *
+     * @param code error code
+     * @param message error message
+     * @return Error to send to the client, or null if it cannot be built
+     */
+    private Message fail(int code, String message) {
+        state = State.CLOSED;
+        try {
+            return new Error(code, message);
+        } catch (ValidationException ex) {
+            return null;
+        }
+    }
+}
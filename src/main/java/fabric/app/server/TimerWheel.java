@@ -0,0 +1,248 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed-wheel timer for connection deadlines. Each connection owns a single
+ * reusable Deadline that it re-arms as its session moves from phase to phase,
+ * and one thread advances the wheel a tick at a time, aborting connections
+ * whose deadline has passed. Moving a deadline later is a single field write;
+ * the wheel notices when the deadline's slot comes around and files it again.
+ */
+final class TimerWheel implements Runnable {
+
+    /**
+     * Length (in milliseconds) of a tick
+     */
+    private static final long TICK = 100;
+
+    /**
+     * Number of slots in the wheel (a power of two)
+     */
+    private static final int SLOTS = 512;
+
+    /**
+     * Expiry of a deadline that is not armed
+     */
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Deadlines in each slot, touched only by the wheel thread
+     */
+    private final List<List<Deadline>> wheel = new ArrayList<>(SLOTS);
+
+    /**
+     * Deadlines filed by other threads, waiting for the wheel thread to place
+     * them
+     */
+    private final Queue<Deadline> incoming = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Time (in nanoseconds) of tick 0
+     */
+    private final long start = System.nanoTime();
+
+    /**
+     * Next tick to be processed (deadlines are filed no earlier than this)
+     */
+    private long tick;
+
+    /**
+     * Creates a wheel with no deadlines
+     */
+    TimerWheel() {
+        for (int i = 0; i < SLOTS; ++i) {
+            wheel.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Creates a deadline, initially not armed
+     *
+     * @param expired run on the wheel thread if the deadline passes
+     * @return new deadline
+     */
+    Deadline deadline(Runnable expired) {
+        return new Deadline(expired);
+    }
+
+    /**
+     * Advances the wheel once per tick. Never returns.
+     */
+    @Override
+    public void run() {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK);
+        while (true) {
+            long wait = start + (tick + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            long current = tick++;
+            for (Deadline d; (d = incoming.poll()) != null; ) {
+                place(d, d.scheduled.get());
+            }
+            expire(current);
+        }
+    }
+
+    /**
+     * Handles the deadlines filed in the slot for a tick
+     *
+     * @param current tick being processed
+     */
+    private void expire(long current) {
+        long now = System.nanoTime();
+        List<Deadline> slot = wheel.get((int) (current & (SLOTS - 1)));
+        List<Deadline> due = new ArrayList<>(slot);
+        slot.clear();
+        for (Deadline d : due) {
+            if (d.tick != current) {
+                // keep a deadline filed for a later turn of the wheel, and
+                // drop a stale copy of one since filed elsewhere
+                if (d.tick > current &&
+                        ((d.tick - current) & (SLOTS - 1)) == 0) {
+                    slot.add(d);
+                }
+                continue;
+            }
+            // announce the deadline is unfiled before checking its expiry, so
+            // that a concurrent arm either sees this or is seen here
+            d.scheduled.set(NEVER);
+            while (true) {
+                long expiry = d.expiry.get();
+                if (expiry == NEVER) {
+                    break;
+                }
+                if (expiry > now) {
+                    if (d.scheduled.compareAndSet(NEVER, expiry)) {
+                        place(d, expiry);
+                    }
+                    break;
+                }
+                // claim the passed expiry, so that an arm, extension, or
+                // cancel that got in first keeps the connection alive
+                if (d.expiry.compareAndSet(expiry, NEVER)) {
+                    d.expired.run();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Files a deadline in the slot for its expiry, or for the next tick if
+     * that has passed
+     *
+     * @param d deadline to be filed
+     * @param expiry time (in nanoseconds) it is filed for
+     */
+    private void place(Deadline d, long expiry) {
+        if (expiry == NEVER) {
+            return;
+        }
+        long t = Math.max(tick,
+                (expiry - start + TimeUnit.MILLISECONDS.toNanos(TICK) - 1) /
+                        TimeUnit.MILLISECONDS.toNanos(TICK));
+        d.tick = t;
+        wheel.get((int) (t & (SLOTS - 1))).add(d);
+    }
+
+    /**
+     * Reusable deadline for one connection. Only the connection's own thread
+     * arms it or reports input to it.
+     */
+    final class Deadline {
+
+        /**
+         * Run on the wheel thread if the deadline passes
+         */
+        private final Runnable expired;
+
+        /**
+         * Time (in nanoseconds) the deadline passes, or NEVER if not armed;
+         * the wheel claims a passed expiry by setting it to NEVER
+         */
+        private final AtomicLong expiry = new AtomicLong(NEVER);
+
+        /**
+         * Expiry the deadline is filed in the wheel for, or NEVER if not
+         * filed
+         */
+        private final AtomicLong scheduled = new AtomicLong(NEVER);
+
+        /**
+         * Additional time (in nanoseconds) allowed per byte of input
+         */
+        private long perByte;
+
+        /**
+         * Tick of the slot the deadline is filed in (wheel thread only)
+         */
+        private long tick;
+
+        /**
+         * Creates a deadline that is not armed
+         *
+         * @param expired run on the wheel thread if the deadline passes
+         */
+        private Deadline(Runnable expired) {
+            this.expired = expired;
+        }
+
+        /**
+         * Arms the deadline to pass after a budget, extended as input
+         * arrives
+         *
+         * @param budget time (in milliseconds) allowed from now
+         * @param perByte additional time (in nanoseconds) allowed per byte
+         *                of input
+         */
+        void arm(long budget, long perByte) {
+            long e = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+            this.perByte = perByte;
+            expiry.set(e);
+            // file again only if the deadline would otherwise be noticed late
+            for (long s; e < (s = scheduled.get()); ) {
+                if (scheduled.compareAndSet(s, e)) {
+                    incoming.add(this);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Extends an armed deadline for input that has arrived
+         *
+         * @param bytes number of bytes received
+         */
+        void received(int bytes) {
+            long e = expiry.get();
+            if (e != NEVER && perByte > 0 && bytes > 0) {
+                // fails only if the wheel has claimed the expiry meanwhile
+                expiry.compareAndSet(e, e + bytes * perByte);
+            }
+        }
+
+        /**
+         * Disarms the deadline
+         */
+        void cancel() {
+            expiry.set(NEVER);
+        }
+    }
+}
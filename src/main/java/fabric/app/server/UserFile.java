@@ -0,0 +1,146 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Password file that is watched for changes. When the file changes, a new
+ * Users index is built in the background and swapped in with a single
+ * write, so authentication never waits on a reload. Sessions take the
+ * current index when they start and keep it. Every index shares the same
+ * sequence counters, so users that remain keep their sequence numbers.
+ */
+final class UserFile implements Runnable {
+
+    /**
+     * Logger for Fabric server events
+     */
+    private static final Logger logger = Logger.getLogger("fabricServer");
+
+    /**
+     * Password file
+     */
+    private final Path path;
+
+    /**
+     * Time (in milliseconds) the file must go unchanged before it is
+     * reloaded
+     */
+    private final long settle;
+
+    /**
+     * Sequence numbers shared by every index
+     */
+    private final Counters counters;
+
+    /**
+     * Most recently loaded index
+     */
+    private volatile Users current;
+
+    /**
+     * Loads the password file
+     *
+     * @param file file containing userIDs and passwords in the format
+     *             "userID:password\r\n"
+     * @param settle time (in milliseconds) the file must go unchanged after
+     *               a change before it is reloaded
+     * @param counters sequence numbers shared by every index
+     * @throws IOException if the file cannot be read, has an improper line
+     * format, or has too many users for counters
+     */
+    UserFile(String file, long settle, Counters counters) throws IOException {
+        this.path = Paths.get(file).toAbsolutePath();
+        this.settle = settle;
+        this.counters = counters;
+        this.current = new Users(path.toString(), counters);
+    }
+
+    /**
+     * Returns the most recently loaded index
+     *
+     * @return current users
+     */
+    Users current() {
+        return current;
+    }
+
+    /**
+     * Watches the password file and reloads it after each change. Returns
+     * only if the file cannot be watched.
+     */
+    @Override
+    public void run() {
+        try (WatchService watcher = FileSystems.getDefault()
+                .newWatchService()) {
+            // editors often replace the file, so watch its directory
+            path.getParent().register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                if (changed(watcher.take())) {
+                    // wait for writes to stop before reading the file
+                    WatchKey key;
+                    while ((key = watcher.poll(settle,
+                            TimeUnit.MILLISECONDS)) != null) {
+                        changed(key);
+                    }
+                    reload();
+                }
+            }
+        } catch (IOException | ClosedWatchServiceException ex) {
+            logger.warning(() -> "Unable to watch password file: " +
+                    ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drains the events of a watch key and resets it
+     *
+     * @param key signalled key
+     * @return true if an event may concern the password file; false
+     * otherwise
+     */
+    private boolean changed(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                    path.getFileName().equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Builds a new index from the password file and swaps it in, keeping
+     * the current index if the file cannot be loaded
+     */
+    private void reload() {
+        try {
+            current = new Users(path.toString(), counters);
+            logger.info(() -> "Reloaded password file " + path);
+        } catch (IOException ex) {
+            logger.warning(() -> "Unable to reload password file: " +
+                    ex.getMessage());
+        }
+    }
+}
@@ -8,92 +8,194 @@
 
 package fabric.app.server;
 
-import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
- * Structure to store userIDs, passwords, and sequence numbers for a server
+ * Structure to store userIDs, passwords, and sequence numbers for a server.
+ * The password file is memory-mapped, split at line boundaries and parsed in
+ * parallel. Each userID and password is then kept as a slice of one packed
+ * byte array, and found through an open-addressing index, so a user costs a
+ * few ints beyond its own bytes. Each user's sequence number is a counter
+ * slot, found once when the index is built, so it can be read and updated
+ * from any thread without a lock and outlives the index.
  */
 public class Users {
+
     /**
-     * Mapping of userIDs to passwords
+     * Error message for constructor exceptions
      */
-    private final HashMap<String, String> psswd = new HashMap<>();
+    private static final String FORMATERR = "Improper password line format";
 
     /**
-     * Mapping of userIDs to sequence numbers
+     * Hashing method for password hashes
      */
-    private final HashMap<String, Integer> seq = new HashMap<>();
+    private static final String HASH = "MD5";
 
     /**
-     * Error message for constructor exceptions
+     * Length (in bytes) of a password hash
      */
-    private static final String FORMATERR = "Improper password line format";
+    private static final int HASHLEN = 16;
 
     /**
-     * Charset used to encode password hashes
+     * Initial value of a userID hash
      */
-    private static final Charset ENC = StandardCharsets.ISO_8859_1;
+    private static final int SEED = 0x811C9DC5;
 
     /**
-     * Hashing method for password hashes
+     * Smallest part of the password file worth parsing on its own thread
      */
-    private static final String HASH = "MD5";
+    private static final int MINCHUNK = 1 << 16;
+
+    /**
+     * Digest and scratch space for each thread verifying credentials
+     */
+    private static final ThreadLocal<Verifier> verifiers =
+            ThreadLocal.withInitial(Verifier::new);
+
+    /**
+     * UserIDs and passwords, each userID immediately followed by its password
+     * and entries packed in file order
+     */
+    private final byte[] data;
 
     /**
-     * Constructor for Users object
+     * Index in data of each entry's userID, followed by the end of data
+     */
+    private final int[] start;
+
+    /**
+     * Index in data of each entry's password
+     */
+    private final int[] split;
+
+    /**
+     * Open-addressing index of entries by userID (entry + 1, or 0 if empty);
+     * its length is a power of two
+     */
+    private final int[] table;
+
+    /**
+     * Sequence numbers of users
+     */
+    private final Counters counters;
+
+    /**
+     * Counter slot of each entry
+     */
+    private final int[] slot;
+
+    /**
+     * Constructor for Users object, with sequence numbers kept in memory and
+     * starting from 0
      *
      * @param file file containing userIDs and passwords in the format
      *             "userID:password\r\n"
-     * @throws IOException if improper line format
+     * @throws IOException if improper line format or two userIDs collide
      */
     public Users(String file) throws IOException {
+        this(file, new Counters());
+    }
+
+    /**
+     * Constructor for Users object, with sequence numbers kept in the given
+     * counters
+     *
+     * @param file file containing userIDs and passwords in the format
+     *             "userID:password\r\n"
+     * @param counters sequence numbers, shared with other indexes
+     * @throws IOException if improper line format, counters cannot grow, or
+     * two userIDs collide
+     */
+    public Users(String file, Counters counters) throws IOException {
         Path path = Paths.get(file);
-        InputStreamReader in = new InputStreamReader(
-                new FileInputStream(path.toFile()), ENC);
-        String uid, pass;
-        StringBuilder stringBuilder;
-        int c;
-
-        // Read all uids and passwords from file
-        while (in.ready()) {
-            // Read uid from file
-            stringBuilder = new StringBuilder();
-            while ((c = in.read()) != ':') {
-                if (c == -1 || c == '\r') {
-                    throw new IOException(FORMATERR);
-                }
-                stringBuilder.append((char) c);
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Password file too large");
             }
-            uid = stringBuilder.toString();
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
 
-            // Read password from file
-            stringBuilder = new StringBuilder();
-            while ((c = in.read()) != '\r') {
-                if (c == -1 || c == '\n') {
-                    throw new IOException(FORMATERR);
-                }
-                stringBuilder.append((char) c);
-            }
-            pass = stringBuilder.toString();
+        // Parse lines between \r\n boundaries in parallel
+        int[] bounds = split(map);
+        List<Chunk> chunks;
+        try {
+            chunks = IntStream.range(0, bounds.length - 1).parallel()
+                    .mapToObj(i -> new Chunk(map, bounds[i], bounds[i + 1]))
+                    .toList();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
 
-            // Check line terminator
-            if (in.read() != '\n') {
-                throw new IOException(FORMATERR);
+        // Pack the chunks in file order
+        int entries = 0;
+        long bytes = 0;
+        for (Chunk c : chunks) {
+            entries += c.count;
+            bytes += c.used;
+        }
+        this.data = new byte[(int) bytes];
+        this.start = new int[entries + 1];
+        this.split = new int[entries];
+        int[] hashes = new int[entries];
+        int e = 0;
+        int d = 0;
+        for (Chunk c : chunks) {
+            System.arraycopy(c.bytes, 0, data, d, c.used);
+            for (int i = 0; i < c.count; ++i, ++e) {
+                start[e] = c.start[i] + d;
+                split[e] = c.split[i] + d;
+                hashes[e] = c.hash[i];
             }
+            d += c.used;
+        }
+        start[entries] = d;
 
-            // Store uid and password in map
-            psswd.put(uid, pass);
-            // Store uid and seq number in map
-            seq.put(uid, 0);
+        // Index entries in file order, so a later line for a userID wins
+        this.table = new int[Math.max(2,
+                Integer.highestOneBit(Math.max(1, entries)) << 2)];
+        int mask = table.length - 1;
+        for (e = 0; e < entries; ++e) {
+            int i = hashes[e] & mask;
+            while (table[i] != 0 && !sameID(table[i] - 1, e)) {
+                i = (i + 1) & mask;
+            }
+            table[i] = e + 1;
         }
+
+        // Find each user's counter by a 64-bit hash of its userID, checked
+        // against a second hash so that colliding userIDs are refused
+        long[] keys = new long[entries];
+        int[] checks = new int[entries];
+        IntStream.range(0, entries).parallel().forEach(n -> {
+            long k = 0xCBF29CE484222325L;
+            int c = split[n] - start[n];
+            for (int i = start[n]; i < split[n]; ++i) {
+                k = (k ^ (data[i] & 0x0FF)) * 0x100000001B3L;
+                c = 31 * c + (data[i] & 0x0FF);
+            }
+            // 0 marks an empty counter slot
+            keys[n] = k == 0 ? 1 : k;
+            checks[n] = c;
+        });
+        this.counters = counters;
+        this.slot = counters.bind(keys, checks);
     }
 
     /**
@@ -103,7 +205,7 @@ public class Users {
      * @return true if uid is found; false otherwise
      */
     public boolean contains(String uid) {
-        return psswd.containsKey(uid);
+        return find(uid) >= 0;
     }
 
     /**
@@ -116,30 +218,85 @@ public class Users {
      * @return generated hash, or null if hash generation fails
      */
     public String hash(String nonce, String uid) {
-        MessageDigest md;
-
-        // Get object for nonce-password MD5 hash generation
-        try {
-            md = MessageDigest.getInstance(HASH);
-        } catch (NoSuchAlgorithmException ex) {
+        int e = find(uid);
+        Verifier v = verifiers.get();
+        if (e < 0 || v.md == null) {
             return null;
         }
+        return HexFormat.of().withUpperCase().formatHex(v.digest(nonce, data,
+                split[e], start[e + 1] - split[e]));
+    }
 
-        // Generate hash (no null pointer since program terminates in catch)
-        md.update((nonce + psswd.get(uid))
-                .getBytes(ENC));
+    /**
+     * Checks a client's hash of the given nonce and the password of the given
+     * userID. Uses a digest kept by the calling thread, and compares the
+     * whole hash regardless of where it first differs, allocating nothing.
+     *
+     * @param uid userID whose password the client hashed
+     * @param nonce nonce the client hashed
+     * @param hash client's hash as 32 hex digits
+     * @return true if uid is known and hash matches; false otherwise
+     */
+    public boolean verify(String uid, CharSequence nonce, CharSequence hash) {
+        int e = find(uid);
+        Verifier v = verifiers.get();
+        if (e < 0 || v.md == null || hash == null ||
+                hash.length() != 2 * HASHLEN) {
+            return false;
+        }
+        return matches(v.digest(nonce, data, split[e],
+                start[e + 1] - split[e]), hash);
+    }
+
+    /**
+     * Checks a client's hash of the given nonce, already formatted as the
+     * ISO-8859-1 bytes of its digits, and the password of the given userID
+     *
+     * @param uid userID whose password the client hashed
+     * @param nonce digits of the nonce the client hashed
+     * @param hash client's hash as 32 hex digits
+     * @return true if uid is known and hash matches; false otherwise
+     */
+    public boolean verify(String uid, byte[] nonce, CharSequence hash) {
+        int e = find(uid);
+        Verifier v = verifiers.get();
+        if (e < 0 || v.md == null || nonce == null || hash == null ||
+                hash.length() != 2 * HASHLEN) {
+            return false;
+        }
+        return matches(v.digest(nonce, nonce.length, data, split[e],
+                start[e + 1] - split[e]), hash);
+    }
 
-        // return hash
-        return HexFormat.of().withUpperCase().formatHex(md.digest());
+    /**
+     * Compares a digest with a client's hash of it, regardless of where they
+     * first differ
+     *
+     * @param digest computed digest
+     * @param hash client's hash as 32 hex digits
+     * @return true if hash matches digest; false otherwise
+     */
+    private static boolean matches(byte[] digest, CharSequence hash) {
+        int diff = 0;
+        for (int i = 0; i < HASHLEN; ++i) {
+            int hi = Character.digit(hash.charAt(2 * i), 16);
+            int lo = Character.digit(hash.charAt(2 * i + 1), 16);
+            // an invalid digit (-1) sets bits outside the low byte
+            diff |= (hi << 4 | lo) ^ (digest[i] & 0x0FF) | (hi | lo) & ~0x0F;
+        }
+        return diff == 0;
     }
 
     /**
-     * Increments the sequence number for the given userID
+     * Atomically increments the sequence number for the given userID. May be
+     * called from any thread, and never waits on updates for other users.
      *
      * @param uid userID corresponding with sequence number to be updated
+     * @return new sequence number
+     * @throws IllegalArgumentException if uid is not found
      */
-    public void update(String uid) {
-        seq.replace(uid, seq.get(uid) + 1);
+    public int update(String uid) throws IllegalArgumentException {
+        return counters.increment(slot[entry(uid)]);
     }
 
     /**
@@ -147,8 +304,310 @@ public class Users {
      *
      * @param uid userID corresponding with sequence number to be returned
      * @return sequence number corresponding with the given userID
+     * @throws IllegalArgumentException if uid is not found
+     */
+    public int getSequence(String uid) throws IllegalArgumentException {
+        return counters.get(slot[entry(uid)]);
+    }
+
+    /**
+     * Finds the entry for a userID that must be present
+     *
+     * @param uid userID to be searched for
+     * @return entry of uid
+     * @throws IllegalArgumentException if uid is not found
+     */
+    private int entry(String uid) throws IllegalArgumentException {
+        int e = find(uid);
+        if (e < 0) {
+            throw new IllegalArgumentException("No such user " + uid);
+        }
+        return e;
+    }
+
+    /**
+     * Finds the entry for a userID
+     *
+     * @param uid userID to be searched for
+     * @return entry of uid, or -1 if not found
+     */
+    private int find(String uid) {
+        if (uid == null) {
+            return -1;
+        }
+        int h = SEED;
+        for (int i = 0; i < uid.length(); ++i) {
+            h = mix(h, uid.charAt(i));
+        }
+        int mask = table.length - 1;
+        for (int i = finish(h) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int e = table[i] - 1;
+            if (matches(e, uid)) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether an entry holds a userID
+     *
+     * @param e entry to be checked
+     * @param uid userID to be compared
+     * @return true if the entry's userID is uid; false otherwise
+     */
+    private boolean matches(int e, String uid) {
+        int off = start[e];
+        if (split[e] - off != uid.length()) {
+            return false;
+        }
+        for (int i = 0; i < uid.length(); ++i) {
+            if (uid.charAt(i) != (data[off + i] & 0x0FF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether two entries hold the same userID
+     *
+     * @param a first entry
+     * @param b second entry
+     * @return true if the userIDs are equal; false otherwise
      */
-    public Integer getSequence(String uid) {
-        return seq.get(uid);
+    private boolean sameID(int a, int b) {
+        return Arrays.equals(data, start[a], split[a], data, start[b],
+                split[b]);
+    }
+
+    /**
+     * Adds a character (or byte) of a userID to its hash (FNV-1a)
+     *
+     * @param h hash so far
+     * @param c next character, from 0 to 255 for stored userIDs
+     * @return new hash
+     */
+    private static int mix(int h, int c) {
+        return (h ^ c) * 0x01000193;
+    }
+
+    /**
+     * Spreads the bits of a finished userID hash
+     *
+     * @param h hash of all characters
+     * @return final hash
+     */
+    private static int finish(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Splits the password file into parts ending at line boundaries, about
+     * one per thread of the common fork-join pool
+     *
+     * @param map password file
+     * @return index of the start of each part, followed by the end of map
+     */
+    private static int[] split(MappedByteBuffer map) {
+        int size = map.limit();
+        int parts = Math.max(1, Math.min(size / MINCHUNK,
+                4 * ForkJoinPool.getCommonPoolParallelism()));
+        int[] bounds = new int[parts + 1];
+        for (int k = 1; k < parts; ++k) {
+            int i = Math.max(bounds[k - 1], (int) ((long) size * k / parts));
+            while (i < size && !(map.get(i) == '\n' && i > 0 &&
+                    map.get(i - 1) == '\r')) {
+                ++i;
+            }
+            bounds[k] = Math.min(size, i + 1);
+        }
+        bounds[parts] = size;
+        return bounds;
+    }
+
+    /**
+     * Entries parsed from one part of the password file, with their userIDs
+     * and passwords packed into a private array
+     */
+    private static final class Chunk {
+
+        /**
+         * Packed userIDs and passwords
+         */
+        private byte[] bytes;
+
+        /**
+         * Number of bytes used in bytes
+         */
+        private int used;
+
+        /**
+         * Index in bytes of each entry's userID
+         */
+        private int[] start = new int[16];
+
+        /**
+         * Index in bytes of each entry's password
+         */
+        private int[] split = new int[16];
+
+        /**
+         * Hash of each entry's userID
+         */
+        private int[] hash = new int[16];
+
+        /**
+         * Number of entries
+         */
+        private int count;
+
+        /**
+         * Parses the lines of part of the password file
+         *
+         * @param map password file
+         * @param from index of the first line
+         * @param to index just past the last line
+         * @throws UncheckedIOException if improper line format
+         */
+        Chunk(MappedByteBuffer map, int from, int to) {
+            bytes = new byte[to - from];
+            int i = from;
+            while (i < to) {
+                if (count == start.length) {
+                    start = Arrays.copyOf(start, 2 * count);
+                    split = Arrays.copyOf(split, 2 * count);
+                    hash = Arrays.copyOf(hash, 2 * count);
+                }
+                start[count] = used;
+
+                // Read uid up to ':'
+                int h = SEED;
+                byte b;
+                while ((b = next(map, i++, to)) != ':') {
+                    if (b == '\r') {
+                        throw formatError();
+                    }
+                    bytes[used++] = b;
+                    h = mix(h, b & 0x0FF);
+                }
+                split[count] = used;
+                hash[count] = finish(h);
+
+                // Read password up to '\r', then check line terminator
+                while ((b = next(map, i++, to)) != '\r') {
+                    if (b == '\n') {
+                        throw formatError();
+                    }
+                    bytes[used++] = b;
+                }
+                if (next(map, i++, to) != '\n') {
+                    throw formatError();
+                }
+                ++count;
+            }
+        }
+
+        /**
+         * Returns a byte of the part
+         *
+         * @param map password file
+         * @param i index of the byte
+         * @param to index just past the part
+         * @return byte at i
+         * @throws UncheckedIOException if i is past the part (a line is
+         * missing its terminator)
+         */
+        private static byte next(MappedByteBuffer map, int i, int to) {
+            if (i >= to) {
+                throw formatError();
+            }
+            return map.get(i);
+        }
+
+        /**
+         * Creates the exception for an improperly formatted line
+         *
+         * @return exception to be thrown
+         */
+        private static UncheckedIOException formatError() {
+            return new UncheckedIOException(new IOException(FORMATERR));
+        }
+    }
+
+    /**
+     * Digest and scratch space used by one thread
+     */
+    private static final class Verifier {
+
+        /**
+         * Digest for password hashes (null if unavailable)
+         */
+        private final MessageDigest md;
+
+        /**
+         * Encoded nonce
+         */
+        private byte[] nonce = new byte[32];
+
+        /**
+         * Most recent digest
+         */
+        private final byte[] digest = new byte[HASHLEN];
+
+        /**
+         * Creates a verifier for the calling thread
+         */
+        Verifier() {
+            MessageDigest m;
+            try {
+                m = MessageDigest.getInstance(HASH);
+            } catch (NoSuchAlgorithmException ex) {
+                m = null;
+            }
+            this.md = m;
+        }
+
+        /**
+         * Hashes a nonce followed by a password
+         *
+         * @param nonce nonce, all ISO-8859-1 characters
+         * @param pass array holding the encoded password
+         * @param off index of the password in pass
+         * @param len length of the password
+         * @return digest, overwritten by the next call
+         */
+        byte[] digest(CharSequence nonce, byte[] pass, int off, int len) {
+            int n = nonce.length();
+            if (n > this.nonce.length) {
+                this.nonce = new byte[n];
+            }
+            for (int i = 0; i < n; ++i) {
+                this.nonce[i] = (byte) nonce.charAt(i);
+            }
+            return digest(this.nonce, n, pass, off, len);
+        }
+
+        /**
+         * Hashes an encoded nonce followed by a password
+         *
+         * @param nonce array holding the encoded nonce
+         * @param n length of the nonce
+         * @param pass array holding the encoded password
+         * @param off index of the password in pass
+         * @param len length of the password
+         * @return digest, overwritten by the next call
+         */
+        byte[] digest(byte[] nonce, int n, byte[] pass, int off, int len) {
+            md.update(nonce, 0, n);
+            md.update(pass, off, len);
+            try {
+                md.digest(digest, 0, HASHLEN);
+            } catch (DigestException ex) {
+                // cannot happen, since digest holds a whole MD5 hash
+                throw new IllegalStateException(ex);
+            }
+            return digest;
+        }
     }
 }
@@ -11,88 +11,318 @@ package fabric.app.server;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * Y allows you to Yip and Yell about the inane.
  * Why Y?  Because X; that's Y.
- * 
- * Appends HTML updates to a specified file
- * 
+ *
+ * Appends HTML updates to a specified file. Updates are escaped and encoded
+ * into pooled buffers and held until flush, which writes them all with one
+ * gathering write; they are only guaranteed to survive a crash once synced.
+ * Not safe for use by more than one thread.
+ *
  * @version 1.0
  */
 public class Y {
 
   /**
-   * File to update
+   * Channel of the file to update, in append mode
+   */
+  private final FileChannel channel;
+
+  /**
+   * Size (in bytes) of each update buffer
+   */
+  private static final int BUFSIZE = 65536;
+
+  /**
+   * Most buffers held at once, after which updates are written before the
+   * next flush; every buffer is kept for reuse
+   */
+  private static final int POOLSIZE = 64;
+
+  /**
+   * Log base 2 of the number of 3-byte units in the largest piece an image
+   * is encoded in
+   */
+  private static final int CHUNKBITS = 14;
+
+  /**
+   * Size (in bytes) of the largest piece an image is encoded in (a multiple
+   * of 3, so that only the last piece ends in a partial unit)
+   */
+  private static final int CHUNK = 3 << CHUNKBITS;
+
+  /**
+   * Largest encoding (in bytes) of one status character
+   */
+  private static final int MAXESCAPE = 4;
+
+  /**
+   * Start of an image update
+   */
+  private static final byte[] IMGPREFIX = bytes(
+          "<img width=\"25%\" src=\"data:image/jpeg;base64,");
+
+  /**
+   * End of an image, before its status
    */
-  private final OutputStream file;
+  private static final byte[] IMGSUFFIX = bytes("\"><br/>");
 
   /**
-   * File encoding
+   * End of a status
    */
-  private static final Charset FILEENC = StandardCharsets.ISO_8859_1;
+  private static final byte[] STATUSSUFFIX = bytes("<hr><p/>\n");
+
+  /**
+   * Encoder for images
+   */
+  private static final Base64.Encoder ENCODER =
+          Base64.getEncoder().withoutPadding();
+
+  /**
+   * Buffers holding updates not yet written, in order
+   */
+  private final List<ByteBuffer> pending = new ArrayList<>();
+
+  /**
+   * Empty buffers ready for reuse
+   */
+  private final Deque<ByteBuffer> pool = new ArrayDeque<>();
+
+  /**
+   * Buffer being filled (the last pending buffer, or null if none)
+   */
+  private ByteBuffer current;
+
+  /**
+   * Arrays a piece of an image is copied into to be encoded, largest first:
+   * 3 * 2^k bytes for each k down to 0, then 2 and 1 for a last partial
+   * unit. The encoder takes only whole arrays, and any image splits into
+   * pieces of these sizes.
+   */
+  private final byte[][] raw = pieces();
+
+  /**
+   * Base64 encoding of a chunk
+   */
+  private final byte[] encoded = new byte[CHUNK / 3 * 4];
 
   /**
    * Create Updater
-   * 
+   *
    * @param filename name of file to update
    *
    * @throws FileNotFoundException if named file not found
    */
   public Y(String filename) throws FileNotFoundException {
-    this.file = new FileOutputStream(filename, true);
+    this.channel = new FileOutputStream(filename, true).getChannel();
+  }
+
+  /**
+   * Write all buffered updates to the file and force them to storage
+   *
+   * @throws IOException if I/O problem
+   */
+  public void sync() throws IOException {
+    flush();
+    channel.force(false);
+  }
+
+  /**
+   * Write all buffered updates to the file with one gathering write. Updates
+   * that fill every buffer are written early, so a flush may follow earlier
+   * writes.
+   *
+   * @throws IOException if I/O problem
+   */
+  public void flush() throws IOException {
+    if (pending.isEmpty()) {
+      return;
+    }
+    ByteBuffer[] bufs = new ByteBuffer[pending.size()];
+    long left = 0;
+    for (int i = 0; i < bufs.length; ++i) {
+      bufs[i] = pending.get(i).flip();
+      left += bufs[i].remaining();
+    }
+    try {
+      while (left > 0) {
+        left -= channel.write(bufs);
+      }
+    } finally {
+      // updates that could not be written are dropped, not retried
+      for (ByteBuffer b : bufs) {
+        pool.push(b.clear());
+      }
+      pending.clear();
+      current = null;
+    }
   }
 
   /**
    * Write single update with image
-   * 
+   *
    * @param status update status
    * @param img    image bytes (jpeg only).
-   * 
+   *
    * @throws IOException if I/O problem or cannot decode image
    */
   public void updateWithImage(String status, byte[] img) throws IOException {
-    writeString("<img width=\"25%\" src=\"data:image/jpeg;base64,");
-    writeString(new String(Base64.getEncoder().withoutPadding()
-            .encode(img), FILEENC));
-    writeString("\"><br/>");
+    put(IMGPREFIX);
+    putBase64(img);
+    put(IMGSUFFIX);
     update(status);
   }
 
   /**
    * Write single update
-   * 
+   *
    * @param status update status
-   * 
+   *
    * @throws IOException if I/O problem or cannot decode image
    */
   public void update(String status) throws IOException {
-    writeString(sanitizeString(status) + "<hr><p/>\n");
+    putSanitized(status);
+    put(STATUSSUFFIX);
+  }
+
+  /**
+   * Buffers bytes
+   *
+   * @param b bytes to buffer
+   *
+   * @throws IOException if I/O problem
+   */
+  private void put(byte[] b) throws IOException {
+    put(b, 0, b.length);
   }
 
   /**
-   * Write encoded string to Updater file
-   * 
-   * @param s update string
-   * 
+   * Buffers part of an array
+   *
+   * @param b array holding bytes to buffer
+   * @param off index of the first byte
+   * @param len number of bytes
+   *
    * @throws IOException if I/O problem
    */
-  private void writeString(String s) throws IOException {
-    file.write(s.getBytes(FILEENC));
+  private void put(byte[] b, int off, int len) throws IOException {
+    for (int end = off + len; off < end; ) {
+      int n = Math.min(end - off, room(1).remaining());
+      current.put(b, off, n);
+      off += n;
+    }
   }
 
   /**
-   * Cheesy string sanitizing for string
-   * 
+   * Buffers the base64 encoding (without padding) of bytes, a piece at a
+   * time: as many of the largest pieces as fit, then at most one of each
+   * smaller size, so nothing is allocated
+   *
+   * @param src bytes to encode
+   *
+   * @throws IOException if I/O problem
+   */
+  private void putBase64(byte[] src) throws IOException {
+    int off = 0;
+    for (byte[] piece : raw) {
+      for (; src.length - off >= piece.length; off += piece.length) {
+        System.arraycopy(src, off, piece, 0, piece.length);
+        put(encoded, 0, ENCODER.encode(piece, encoded));
+      }
+    }
+  }
+
+  /**
+   * Cheesy string sanitizing, encoded straight into the buffer in one pass:
+   * angle brackets become entities, slashes are dropped, and characters
+   * outside ISO-8859-1 become '?'
+   *
    * @param s string to sanitize
-   * 
-   * @return sanitized string
+   *
+   * @throws IOException if I/O problem
+   */
+  private void putSanitized(String s) throws IOException {
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      ByteBuffer buf = room(MAXESCAPE);
+      switch (c) {
+        case '<' -> buf.put((byte) '&').put((byte) 'l').put((byte) 't')
+                .put((byte) ';');
+        case '>' -> buf.put((byte) '&').put((byte) 'g').put((byte) 't')
+                .put((byte) ';');
+        case '/' -> { }
+        default -> {
+          if (Character.isHighSurrogate(c)) {
+            // slashes are dropped before encoding, so a pair may span them
+            int j = i + 1;
+            while (j < s.length() && s.charAt(j) == '/') {
+              ++j;
+            }
+            if (j < s.length() && Character.isLowSurrogate(s.charAt(j))) {
+              i = j;
+            }
+          }
+          buf.put(c <= 0xFF ? (byte) c : (byte) '?');
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the buffer being filled, starting a new one if it has too
+   * little room left, and first writing the buffered updates if every
+   * buffer is in use
+   *
+   * @param n number of bytes needed
+   * @return buffer with at least n bytes remaining
+   *
+   * @throws IOException if I/O problem
+   */
+  private ByteBuffer room(int n) throws IOException {
+    if (current == null || current.remaining() < n) {
+      if (pending.size() == POOLSIZE) {
+        flush();
+      }
+      current = pool.isEmpty() ? ByteBuffer.allocateDirect(BUFSIZE) :
+              pool.pop();
+      pending.add(current);
+    }
+    return current;
+  }
+
+  /**
+   * Allocates the arrays image pieces are encoded from
+   *
+   * @return arrays of 3 * 2^k bytes, from k = CHUNKBITS down to 0, followed
+   * by arrays of 2 and 1 bytes
+   */
+  private static byte[][] pieces() {
+    byte[][] pieces = new byte[CHUNKBITS + 3][];
+    for (int k = 0; k <= CHUNKBITS; ++k) {
+      pieces[CHUNKBITS - k] = new byte[3 << k];
+    }
+    pieces[CHUNKBITS + 1] = new byte[2];
+    pieces[CHUNKBITS + 2] = new byte[1];
+    return pieces;
+  }
+
+  /**
+   * Encodes a constant for the file
+   *
+   * @param s constant
+   * @return encoded bytes
    */
-  private String sanitizeString(String s) {
-    return s.replace("<", "&lt;").replace(">", "&gt;").replace("/", "");
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.ISO_8859_1);
   }
 }
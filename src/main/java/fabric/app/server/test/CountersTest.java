@@ -0,0 +1,209 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server.test;
+
+import fabric.app.server.Counters;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Counters class
+ */
+class CountersTest {
+
+    private static final long[] KEYS = {11, 22, 33};
+
+    /**
+     * Binds keys whose check is the key itself
+     *
+     * @param counters counters to bind in
+     * @param keys keys to be bound
+     * @return slot of each key
+     * @throws IOException if the table cannot grow or keys collide
+     */
+    private static int[] bind(Counters counters, long... keys)
+            throws IOException {
+        return counters.bind(keys, LongStream.of(keys)
+                .mapToInt(k -> (int) k).toArray());
+    }
+
+    @TempDir
+    private Path dir;
+
+    /**
+     * Tests that a new counter file starts every counter from 0 and counts
+     * each slot on its own
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void createTest() throws IOException {
+        Path file = dir.resolve("counters.dat");
+        Counters counters = new Counters(file.toString());
+        assertTrue(Files.size(file) > 0);
+        int[] slots = bind(counters, KEYS);
+        assertEquals(KEYS.length, IntStream.of(slots).distinct().count());
+        assertEquals(0, counters.get(slots[0]));
+        assertEquals(1, counters.increment(slots[0]));
+        assertEquals(2, counters.increment(slots[0]));
+        assertEquals(1, counters.increment(slots[1]));
+        assertEquals(0, counters.get(slots[2]));
+    }
+
+    /**
+     * Tests that binding a key again finds the slot it already has
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void rebindTest() throws IOException {
+        Counters counters = new Counters();
+        int[] slots = bind(counters, KEYS);
+        counters.increment(slots[2]);
+        int[] again = bind(counters, 33, 44, 11);
+        assertEquals(slots[2], again[0]);
+        assertEquals(slots[0], again[2]);
+        assertEquals(1, counters.get(again[0]));
+        assertEquals(0, counters.get(again[1]));
+    }
+
+    /**
+     * Tests that counters survive reopening the file
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void reopenTest() throws IOException {
+        String file = dir.resolve("counters.dat").toString();
+        Counters counters = new Counters(file);
+        int[] slots = bind(counters, KEYS);
+        counters.increment(slots[1]);
+        counters.increment(slots[1]);
+        counters.sync();
+
+        Counters reopened = new Counters(file);
+        int[] again = bind(reopened, KEYS);
+        assertEquals(0, reopened.get(again[0]));
+        assertEquals(2, reopened.get(again[1]));
+        assertEquals(3, reopened.increment(again[1]));
+    }
+
+    /**
+     * Tests that the file grows while counters are bound, without moving or
+     * losing the counters already handed out, and reopens at its new size
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void growthTest() throws IOException {
+        Path file = dir.resolve("counters.dat");
+        Counters counters = new Counters(file.toString());
+        int[] first = bind(counters, KEYS);
+        counters.increment(first[0]);
+        long size = Files.size(file);
+
+        long[] many = LongStream.rangeClosed(1, 5000).toArray();
+        int[] slots = bind(counters, many);
+        assertTrue(Files.size(file) > size);
+        assertEquals(many.length, IntStream.of(slots).distinct().count());
+        assertEquals(first[0], slots[10]);
+        assertEquals(1, counters.get(first[0]));
+        assertEquals(2, counters.increment(first[0]));
+        counters.increment(slots[4999]);
+        counters.sync();
+
+        Counters reopened = new Counters(file.toString());
+        int[] again = bind(reopened, 11, 5000);
+        assertEquals(2, reopened.get(again[0]));
+        assertEquals(1, reopened.get(again[1]));
+    }
+
+    /**
+     * Tests that in-memory counters grow too
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void memoryGrowthTest() throws IOException {
+        Counters counters = new Counters();
+        int[] first = bind(counters, KEYS);
+        counters.increment(first[2]);
+        int[] slots = bind(counters, LongStream.rangeClosed(100, 10000)
+                .toArray());
+        assertEquals(slots.length, IntStream.of(slots).distinct().count());
+        assertEquals(1, counters.get(first[2]));
+        assertEquals(1, counters.increment(slots[slots.length - 1]));
+    }
+
+    /**
+     * Tests that a key bound with another check is refused, within one bind,
+     * across binds, and after reopening
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void collisionTest() throws IOException {
+        Path file = dir.resolve("counters.dat");
+        Counters counters = new Counters(file.toString());
+        int[] slots = bind(counters, KEYS);
+        assertThrows(IOException.class, () -> counters.bind(
+                new long[] {22}, new int[] {23}));
+        assertThrows(IOException.class, () -> counters.bind(
+                new long[] {44, 44}, new int[] {44, 45}));
+        assertThrows(IllegalArgumentException.class, () -> counters.bind(
+                new long[] {55}, new int[0]));
+        assertArrayEquals(slots, bind(counters, KEYS));
+        counters.sync();
+
+        Counters reopened = new Counters(file.toString());
+        assertThrows(IOException.class, () -> reopened.bind(
+                new long[] {33}, new int[] {34}));
+        assertArrayEquals(slots, bind(reopened, KEYS));
+    }
+
+    /**
+     * Tests that a file with a corrupt header is rejected
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void corruptHeaderTest() throws IOException {
+        Path file = dir.resolve("counters.dat");
+        bind(new Counters(file.toString()), KEYS);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[0] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> new Counters(file.toString()));
+    }
+
+    /**
+     * Tests that a file cut short is rejected
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void truncatedTest() throws IOException {
+        Path file = dir.resolve("counters.dat");
+        new Counters(file.toString());
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 16));
+        assertThrows(IOException.class, () -> new Counters(file.toString()));
+        Files.write(file, Arrays.copyOf(bytes, 8));
+        assertThrows(IOException.class, () -> new Counters(file.toString()));
+    }
+}
@@ -0,0 +1,222 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.app.server.test;
+
+import fabric.app.server.Users;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Users class
+ */
+class UsersTest {
+
+    private static final String NONCE = "123456";
+    private static final String FILE = "bob:pw\r\nalice:secret\r\n";
+
+    @TempDir
+    private Path dir;
+
+    /**
+     * Writes a password file
+     *
+     * @param contents file contents
+     * @return name of the file
+     * @throws IOException if I/O problem
+     */
+    private String write(String contents) throws IOException {
+        Path file = dir.resolve("pw.txt");
+        Files.writeString(file, contents, StandardCharsets.ISO_8859_1);
+        return file.toString();
+    }
+
+    /**
+     * Computes a client's hash of a nonce and password
+     *
+     * @param nonce nonce to be hashed
+     * @param pass password to be hashed
+     * @return hash as hex digits
+     * @throws NoSuchAlgorithmException if MD5 is unavailable
+     */
+    private static String hash(String nonce, String pass)
+            throws NoSuchAlgorithmException {
+        return HexFormat.of().withUpperCase().formatHex(MessageDigest
+                .getInstance("MD5").digest((nonce + pass)
+                        .getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * Tests that each user in a well formed file is found
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void containsTest() throws IOException {
+        Users users = new Users(write(FILE));
+        assertTrue(users.contains("bob"));
+        assertTrue(users.contains("alice"));
+        assertFalse(users.contains("carol"));
+        assertFalse(users.contains("bo"));
+        assertFalse(users.contains(null));
+    }
+
+    /**
+     * Tests that an empty file has no users
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void emptyTest() throws IOException {
+        assertFalse(new Users(write("")).contains("bob"));
+    }
+
+    /**
+     * Tests verification with correct and wrong passwords
+     *
+     * @throws IOException if I/O problem
+     * @throws NoSuchAlgorithmException if MD5 is unavailable
+     */
+    @Test
+    void verifyTest() throws IOException, NoSuchAlgorithmException {
+        Users users = new Users(write(FILE));
+        assertTrue(users.verify("bob", NONCE, hash(NONCE, "pw")));
+        assertTrue(users.verify("bob", NONCE,
+                hash(NONCE, "pw").toLowerCase()));
+        assertTrue(users.verify("alice", NONCE, hash(NONCE, "secret")));
+        assertFalse(users.verify("bob", NONCE, hash(NONCE, "secret")));
+        assertFalse(users.verify("bob", "654321", hash(NONCE, "pw")));
+        assertFalse(users.verify("carol", NONCE, hash(NONCE, "pw")));
+        assertFalse(users.verify("bob", NONCE, null));
+        assertFalse(users.verify("bob", NONCE, "ABC"));
+        byte[] digits = NONCE.getBytes(StandardCharsets.ISO_8859_1);
+        assertTrue(users.verify("bob", digits, hash(NONCE, "pw")));
+        assertFalse(users.verify("bob", digits, hash(NONCE, "secret")));
+        assertFalse(users.verify("bob", (byte[]) null, hash(NONCE, "pw")));
+        assertEquals(hash(NONCE, "pw"), users.hash(NONCE, "bob"));
+        assertNull(users.hash(NONCE, "carol"));
+    }
+
+    /**
+     * Tests that a hash with digits that are not hex is refused
+     *
+     * @throws IOException if I/O problem
+     * @throws NoSuchAlgorithmException if MD5 is unavailable
+     */
+    @Test
+    void verifyBadDigitTest() throws IOException, NoSuchAlgorithmException {
+        Users users = new Users(write(FILE));
+        char[] bad = hash(NONCE, "pw").toCharArray();
+        bad[5] = 'G';
+        assertFalse(users.verify("bob", NONCE, new String(bad)));
+    }
+
+    /**
+     * Tests that the last line for a duplicate userID wins
+     *
+     * @throws IOException if I/O problem
+     * @throws NoSuchAlgorithmException if MD5 is unavailable
+     */
+    @Test
+    void duplicateTest() throws IOException, NoSuchAlgorithmException {
+        Users users = new Users(write("bob:old\r\nalice:a\r\nbob:new\r\n"));
+        assertTrue(users.verify("bob", NONCE, hash(NONCE, "new")));
+        assertFalse(users.verify("bob", NONCE, hash(NONCE, "old")));
+        users.update("bob");
+        assertEquals(1, users.getSequence("bob"));
+    }
+
+    /**
+     * Tests rejection of improperly formatted lines
+     *
+     * @param contents file contents
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"bob\r\n", "bob:pw\n", "bob:pw\r", "bob:pw",
+            "bob:pw\r\nalice", "bob:p\rw\r\n", "bo\rb:pw\r\n",
+            "bob:pw\nalice:a\r\n"})
+    void formatTest(String contents) {
+        assertThrows(IOException.class, () -> new Users(write(contents)));
+    }
+
+    /**
+     * Tests sequence numbers, which start from 0 and count by user
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void sequenceTest() throws IOException {
+        Users users = new Users(write(FILE));
+        assertEquals(0, users.getSequence("bob"));
+        assertEquals(1, users.update("bob"));
+        assertEquals(2, users.update("bob"));
+        assertEquals(1, users.update("alice"));
+        assertEquals(2, users.getSequence("bob"));
+        assertThrows(IllegalArgumentException.class,
+                () -> users.update("carol"));
+        assertThrows(IllegalArgumentException.class,
+                () -> users.getSequence("carol"));
+    }
+
+    /**
+     * Tests a file large enough to be parsed in several parts, with lines of
+     * varying length so the parts end at many different places
+     *
+     * @throws IOException if I/O problem
+     * @throws NoSuchAlgorithmException if MD5 is unavailable
+     */
+    @Test
+    void largeFileTest() throws IOException, NoSuchAlgorithmException {
+        StringBuilder file = new StringBuilder();
+        int count = 40000;
+        for (int i = 0; i < count; ++i) {
+            file.append("user").append(i).append(':')
+                    .append("p".repeat(i % 13)).append(i).append("\r\n");
+        }
+        Users users = new Users(write(file.toString()));
+        for (int i = 0; i < count; ++i) {
+            assertTrue(users.contains("user" + i), "user" + i);
+        }
+        assertFalse(users.contains("user" + count));
+        for (int i = 0; i < count; i += 997) {
+            assertTrue(users.verify("user" + i, NONCE,
+                    hash(NONCE, "p".repeat(i % 13) + i)));
+        }
+        assertEquals(users.hash(NONCE, "user39999"),
+                hash(NONCE, "p".repeat(39999 % 13) + 39999));
+    }
+
+    /**
+     * Tests that a bad line deep in a large file is still found
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void largeFileFormatTest() throws IOException {
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < 40000; ++i) {
+            file.append("user").append(i).append(":pw\r\n");
+        }
+        // a password broken by a bare line feed
+        file.insert(file.indexOf("user20000:") + 11, '\n');
+        String name = write(file.toString());
+        assertThrows(IOException.class, () -> new Users(name));
+    }
+}
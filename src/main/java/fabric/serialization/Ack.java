@@ -9,6 +9,7 @@
 package fabric.serialization;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 /**
@@ -22,23 +23,20 @@ public class Ack extends Message {
     private static final String ACKOP = "ACK";
 
     /**
-     * Constructs ACK message
+     * Encoding of every ACK message
      */
-    public Ack() {}
+    private static final byte[] FRAME = (ACKOP + Message.TERM1 +
+            Message.TERM2).getBytes(StandardCharsets.ISO_8859_1);
 
     /**
-     * Constructs ACK message from MessageInput
-     *
-     * @param in message input object
-     * @throws ValidationException if data from input is invalid
-     * @throws IOException if I/O problem
+     * Shared ACK message, encoded without allocation
      */
-    protected Ack(MessageInput in) throws ValidationException, IOException {
-        String msg = in.readLine();
-        if (!Objects.equals(msg, "" + Message.TERM2)) {
-            throw new ValidationException("Bad message", msg);
-        }
-    }
+    public static final Ack ACK = new Ack();
+
+    /**
+     * Constructs ACK message
+     */
+    public Ack() {}
 
     /**
      * Returns a String representation
@@ -57,7 +55,7 @@ public class Ack extends Message {
      * @throws IOException if I/O problem
      */
     public void encode(MessageOutput out) throws NullPointerException, IOException {
-        out.writeMessage(this.getOperation());
+        out.writeFrame(FRAME);
     }
 
     /**
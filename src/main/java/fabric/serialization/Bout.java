@@ -9,6 +9,7 @@
 package fabric.serialization;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -40,6 +41,12 @@ public class Bout extends Message {
      */
     private static final Charset ENC = StandardCharsets.ISO_8859_1;
 
+    /**
+     * Encoder for image serialization (Base64 with no padding)
+     */
+    private static final Base64.Encoder ENCODER =
+            Base64.getEncoder().withoutPadding();
+
     /**
      * Constructs bout message using given values
      *
@@ -60,18 +67,11 @@ public class Bout extends Message {
      * @throws IOException if I/O problem
      */
     protected Bout(MessageInput in) throws ValidationException, IOException {
-        String msg = Message.validateFabricMessage(in.readLine());
+        // Check that category is alphanumeric as it is read
+        this.category = in.readToken(CharClass.WORD, "Bad category in Bout");
 
-        // Check that category can be parsed as an alphanumeric value
-        String category = msg.substring(0, msg.indexOf(' '));
-        if (!category.matches("^[\\w]+$" )) {
-            throw new ValidationException("Bad category in Bout", category);
-        }
-        this.category = validateCategory(category);
-
-        // Check that image is Base64 encoding with no padding
-        msg = msg.substring(msg.indexOf(' ') + 1);
-        this.image = validateImage(Base64.getDecoder().decode(msg));
+        // Decode image from Base64 encoding as it is read
+        this.image = validateImage(in.readBase64());
     }
 
     /**
@@ -145,8 +145,14 @@ public class Bout extends Message {
      */
     @Override
     public void encode(MessageOutput out) throws NullPointerException, IOException {
-        out.writeMessage(BOUTOP, category, Base64.getEncoder().withoutPadding()
-                .encodeToString(image));
+        out.writeField(BOUTOP);
+        out.writeField(category);
+        // Stream image through the encoder, which writes out in fixed-size
+        // chunks and finishes the last unit on close
+        try (OutputStream enc = ENCODER.wrap(out.fieldStream())) {
+            enc.write(image);
+        }
+        out.endMessage();
     }
 
     /**
@@ -182,7 +188,7 @@ public class Bout extends Message {
      */
     private static String validateCategory(String category) throws ValidationException {
         // Validate that category is 1+ of alphanumeric
-        if (category == null || !category.matches("^[\\w]+$")) {
+        if (!CharClass.WORD.matches(category)) {
             throw new ValidationException("Invalid category", category);
         }
         return category;
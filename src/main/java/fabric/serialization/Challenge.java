@@ -9,6 +9,8 @@
 package fabric.serialization;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -22,9 +24,9 @@ public class Challenge extends Message {
     private static final String CLNGOP = "CLNG";
 
     /**
-     * Challenge nonce
+     * Challenge nonce, as the ISO-8859-1 bytes of its digits
      */
-    private String nonce;
+    private byte[] nonce;
 
     /**
      * Constructs Challenge message
@@ -36,6 +38,23 @@ public class Challenge extends Message {
         this.nonce = validateNonce(nonce);
     }
 
+    /**
+     * Constructs Challenge message from a nonce already formatted as the
+     * ISO-8859-1 bytes of its digits, which are encoded as given. The bytes
+     * are not copied, so they must not be changed afterward.
+     *
+     * @param nonce digits of challenge nonce
+     * @throws ValidationException if nonce is null or invalid
+     */
+    public Challenge(byte[] nonce) throws ValidationException {
+        if (nonce == null || !CharClass.DIGITS.matches(nonce, 0,
+                nonce.length)) {
+            throw new ValidationException("Invalid nonce", nonce == null ?
+                    null : new String(nonce, StandardCharsets.ISO_8859_1));
+        }
+        this.nonce = nonce;
+    }
+
     /**
      * Constructs Challenge from MessageInput
      *
@@ -44,10 +63,9 @@ public class Challenge extends Message {
      * @throws IOException if I/O problem
      */
     protected Challenge(MessageInput in) throws ValidationException, IOException {
-        String msg = Message.validateFabricMessage(in.readLine());
-
-        // Validate Challenge and nonce
-        this.nonce = validateNonce(msg);
+        // Validate nonce as it is read
+        this.nonce = in.readField(CharClass.DIGITS, "Invalid nonce")
+                .getBytes(StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -56,7 +74,7 @@ public class Challenge extends Message {
      * @return a String representation
      */
     public String toString() {
-        return "Challenge: nonce=" + this.nonce;
+        return "Challenge: nonce=" + getNonce();
     }
 
     /**
@@ -65,7 +83,7 @@ public class Challenge extends Message {
      * @return nonce
      */
     public String getNonce() {
-        return this.nonce;
+        return new String(this.nonce, StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -110,7 +128,7 @@ public class Challenge extends Message {
      */
     @Override
     public boolean equals(Object o) {
-        return super.equals(o) && Objects.equals(this.nonce,
+        return super.equals(o) && Arrays.equals(this.nonce,
                 ((Challenge) o).nonce);
     }
 
@@ -121,20 +139,20 @@ public class Challenge extends Message {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(CLNGOP, this.nonce);
+        return Objects.hash(CLNGOP, Arrays.hashCode(this.nonce));
     }
 
     /**
      * Validates that nonce is 1+ numeric
      *
      * @param nonce challenge nonce
-     * @return nonce
+     * @return bytes of nonce
      * @throws ValidationException if validation fails
      */
-    private static String validateNonce(String nonce) throws ValidationException {
-        if (nonce == null || !nonce.matches("[0-9]+")) {
+    private static byte[] validateNonce(String nonce) throws ValidationException {
+        if (!CharClass.DIGITS.matches(nonce)) {
             throw new ValidationException("Invalid nonce", nonce);
         }
-        return nonce;
+        return nonce.getBytes(StandardCharsets.ISO_8859_1);
     }
 }
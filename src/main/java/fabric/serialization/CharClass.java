@@ -0,0 +1,111 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.serialization;
+
+/**
+ * Precompiled character class with length bounds for validating message
+ * fields without regular expressions. A value matches if its length is within
+ * bounds and each of its characters is in the class.
+ */
+final class CharClass {
+
+    /**
+     * 1+ alphanumeric characters (regex [\w]+)
+     */
+    static final CharClass WORD = new CharClass(1, Integer.MAX_VALUE,
+            "azAZ09__");
+
+    /**
+     * 1+ alphanumeric characters or spaces (regex [\w ]+)
+     */
+    static final CharClass WORDSP = new CharClass(1, Integer.MAX_VALUE,
+            "azAZ09__  ");
+
+    /**
+     * 1+ decimal digits (regex [0-9]+)
+     */
+    static final CharClass DIGITS = new CharClass(1, Integer.MAX_VALUE, "09");
+
+    /**
+     * Exactly 32 uppercase hex digits (regex [0-9A-F]{32})
+     */
+    static final CharClass HEX32 = new CharClass(32, 32, "09AF");
+
+    /**
+     * Membership of each ISO-8859-1 character
+     */
+    private final boolean[] members = new boolean[256];
+
+    /**
+     * Minimum length of a matching value
+     */
+    private final int min;
+
+    /**
+     * Maximum length of a matching value
+     */
+    private final int max;
+
+    /**
+     * Constructs a character class
+     *
+     * @param min minimum length of a matching value
+     * @param max maximum length of a matching value
+     * @param ranges pairs of first and last characters of each range in the
+     *               class
+     */
+    private CharClass(int min, int max, String ranges) {
+        this.min = min;
+        this.max = max;
+        for (int i = 0; i < ranges.length(); i += 2) {
+            for (char c = ranges.charAt(i); c <= ranges.charAt(i + 1); ++c) {
+                members[c] = true;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a String matches the class
+     *
+     * @param s String to be checked
+     * @return true if s is non-null and matches; false otherwise
+     */
+    boolean matches(String s) {
+        if (s == null || s.length() < min || s.length() > max) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c >= members.length || !members[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a range of ISO-8859-1 bytes matches the class
+     *
+     * @param b bytes to be checked
+     * @param off index of the first byte
+     * @param len number of bytes
+     * @return true if the bytes match; false otherwise
+     */
+    boolean matches(byte[] b, int off, int len) {
+        if (len < min || len > max) {
+            return false;
+        }
+        for (int i = off; i < off + len; ++i) {
+            if (!members[b[i] & 0xFF]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
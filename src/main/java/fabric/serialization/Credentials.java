@@ -44,10 +44,8 @@ public class Credentials extends Message {
      * @throws IOException if I/O problem
      */
     protected Credentials(MessageInput in) throws ValidationException, IOException {
-        String msg = Message.validateFabricMessage(in.readLine());
-
-        // Validate Credentials and hash
-        this.hash = validateHash(msg);
+        // Validate hash as it is read
+        this.hash = in.readField(CharClass.HEX32, "Invalid hash");
     }
 
     /**
@@ -131,7 +129,7 @@ public class Credentials extends Message {
      * @return hash
      */
     private static String validateHash(String hash) throws ValidationException {
-        if (hash == null || !hash.matches("[0-9A-F]{32}")) {
+        if (!CharClass.HEX32.matches(hash)) {
             throw new ValidationException("Invalid hash", hash);
         }
         return hash;
@@ -61,18 +61,16 @@ public class Error extends Message {
      * @throws IOException if I/O problem
      */
     protected Error(MessageInput in) throws ValidationException, IOException {
-        String msg = Message.validateFabricMessage(in.readLine());
-
         // Check that error code can be parsed as a sp terminated int
-        String code = msg.substring(0, msg.indexOf(Message.DELIM));
-        if (!code.matches("^[0-9]+$" )) {
-            throw new ValidationException("Bad code in Error", code);
+        String code = in.readToken(CharClass.DIGITS, "Bad code in Error");
+        try {
+            this.code = validateCode(Integer.parseInt(code));
+        } catch (NumberFormatException ex) {
+            throw new ValidationException("Invalid error code", ex, code);
         }
-        this.code = validateCode(Integer.parseInt(code));
 
-        // Check that message has correct terminating sequence
-        msg = msg.substring(msg.indexOf(Message.DELIM) + 1);
-        this.message = validateMessage(msg);
+        // Validate message as it is read
+        this.message = in.readField(CharClass.WORDSP, "Invalid message");
     }
 
     /**
@@ -191,7 +189,7 @@ public class Error extends Message {
      */
     private static String validateMessage(String message) throws ValidationException {
         // Validate that message is 1+ of alphanum or sp
-        if (message == null || !message.matches("^[\\w ]+$")) {
+        if (!CharClass.WORDSP.matches(message)) {
             throw new ValidationException("Invalid message", message);
         }
         return message;
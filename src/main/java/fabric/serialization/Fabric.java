@@ -9,6 +9,7 @@
 package fabric.serialization;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 /**
@@ -21,27 +22,40 @@ public class Fabric extends Message {
      */
     private static final String FABRICOP = "FABRIC";
 
+    /**
+     * Protocol version carried by Fabric messages
+     */
     private static final String VERSION = "1.0";
 
+    /**
+     * Encoding of every Fabric message
+     */
+    private static final byte[] FRAME = (FABRICOP + Message.DELIM +
+            VERSION + Message.TERM1 + Message.TERM2)
+            .getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * Shared Fabric message, encoded without allocation
+     */
+    public static final Fabric FABRIC = new Fabric();
+
     /**
      * Constructs Fabric message
      */
     public Fabric() {}
 
     /**
-     * Constructs Fabric from MessageInput
+     * Reads the rest of a Fabric message from MessageInput
      *
      * @param in message input object
+     * @return the shared Fabric message
      * @throws ValidationException if data from input is invalid
      * @throws IOException if I/O problem
      */
-    protected Fabric(MessageInput in) throws ValidationException, IOException {
-        String msg = Message.validateFabricMessage(in.readLine());
-
-        // Check that message has correct version
-        if (!msg.equals(VERSION)) {
-            throw new ValidationException("Invalid version", msg);
-        }
+    static Fabric read(MessageInput in) throws ValidationException,
+            IOException {
+        in.readLiteral(VERSION, "Invalid version");
+        return FABRIC;
     }
 
     /**
@@ -72,7 +86,7 @@ public class Fabric extends Message {
      */
     @Override
     public void encode(MessageOutput out) throws NullPointerException, IOException {
-        out.writeMessage(FABRICOP, VERSION);
+        out.writeFrame(FRAME);
     }
 
     /**
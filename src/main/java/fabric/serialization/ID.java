@@ -44,10 +44,8 @@ public class ID extends Message {
      * @throws IOException if I/O problem
      */
     protected ID(MessageInput in) throws ValidationException, IOException {
-        String msg = Message.validateFabricMessage(in.readLine());
-
-        // Validate id
-        this.ID = validateID(msg);
+        // Validate id as it is read
+        this.ID = in.readField(CharClass.WORD, "Invalid ID");
     }
 
     /**
@@ -131,7 +129,7 @@ public class ID extends Message {
      * @return ID
      */
     private static String validateID(String ID) throws ValidationException {
-        if (ID == null || !ID.matches("[\\w]+")) {
+        if (!CharClass.WORD.matches(ID)) {
             throw new ValidationException("Invalid ID", ID);
         }
         return ID;
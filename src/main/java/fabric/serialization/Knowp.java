@@ -9,6 +9,7 @@
 package fabric.serialization;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 /**
@@ -22,23 +23,20 @@ public class Knowp extends Message {
     private static final String KNOWPOP = "KNOWP";
 
     /**
-     * Constructs Knowp message
+     * Encoding of every Knowp message
      */
-    public Knowp() {}
+    private static final byte[] FRAME = (KNOWPOP + Message.TERM1 +
+            Message.TERM2).getBytes(StandardCharsets.ISO_8859_1);
 
     /**
-     * Constructs Knowp message from MessageInput
-     *
-     * @param in message input object
-     * @throws ValidationException if data from input is invalid
-     * @throws IOException if I/O problem
+     * Shared Knowp message, encoded without allocation
      */
-    protected Knowp(MessageInput in) throws ValidationException, IOException {
-        String msg = in.readLine();
-        if (!Objects.equals(msg, "" + Message.TERM2)) {
-            throw new ValidationException("Bad message", msg);
-        }
-    }
+    public static final Knowp KNOWP = new Knowp();
+
+    /**
+     * Constructs Knowp message
+     */
+    public Knowp() {}
 
     /**
      * Returns a String representation
@@ -68,7 +66,7 @@ public class Knowp extends Message {
      */
     @Override
     public void encode(MessageOutput out) throws NullPointerException, IOException {
-        out.writeMessage(KNOWPOP);
+        out.writeFrame(FRAME);
     }
 
     /**
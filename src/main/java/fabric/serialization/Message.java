@@ -9,6 +9,7 @@
 package fabric.serialization;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 /**
@@ -35,12 +36,78 @@ public abstract class Message {
     // package for static use by encode/decode methods
     static final char TERM2 = '\n';
 
+    /**
+     * Decoder for the remainder of a message once its operation has been read
+     */
+    @FunctionalInterface
+    protected interface Decoder {
+        /**
+         * Deserializes the message following its operation (and, for an
+         * operation with no fields, its terminator)
+         *
+         * @param in deserialization input source
+         * @return the decoded message
+         * @throws ValidationException if parse or validation problem
+         * @throws IOException if I/O problem
+         */
+        Message decode(MessageInput in) throws ValidationException,
+                IOException;
+    }
+
+    /**
+     * Decoders of all registered operations
+     */
+    private static final OpTable OPERATIONS = new OpTable();
+
+    // Registration of the built-in message types
+    static {
+        register("ACK", false, in -> Ack.ACK);
+        register("BOUT", true, Bout::new);
+        register("CLNG", true, Challenge::new);
+        register("CRED", true, Credentials::new);
+        register("ERROR", true, Error::new);
+        register("FABRIC", true, Fabric::read);
+        register("ID", true, ID::new);
+        register("KNOWP", false, in -> Knowp.KNOWP);
+        register("WINDOW", true, Window::new);
+    }
+
     /**
      * Default constructor
      */
     // protected for subclass access
     protected Message() {}
 
+    /**
+     * Registers a message type so that decode recognizes its operation. The
+     * message types of this package register when Message is initialized; a
+     * message type defined elsewhere registers from its own static
+     * initializer, with no change to Message.
+     *
+     * @param operation message operation
+     * @param fields true if the operation is followed by delimited fields;
+     *               false if it is immediately terminated
+     * @param decoder decoder for the remainder of the message, called once
+     *                the operation (and, with no fields, its terminator) has
+     *                been read
+     * @throws NullPointerException if operation or decoder is null
+     * @throws IllegalArgumentException if operation is not 1+ alphanumeric
+     * or is already registered
+     */
+    // protected so that subclasses may register their operations
+    protected static void register(String operation, boolean fields,
+                                   Decoder decoder)
+            throws NullPointerException, IllegalArgumentException {
+        Objects.requireNonNull(decoder, "Null decoder");
+        if (!CharClass.WORD.matches(Objects.requireNonNull(operation,
+                "Null operation"))) {
+            throw new IllegalArgumentException("Invalid operation: " +
+                    operation);
+        }
+        OPERATIONS.put((operation + (fields ? DELIM : TERM1))
+                .getBytes(StandardCharsets.ISO_8859_1), decoder);
+    }
+
     /**
      * Deserializes message from input source
      *
@@ -52,22 +119,20 @@ public abstract class Message {
      */
     public static Message decode(MessageInput in) throws NullPointerException,
             ValidationException, IOException {
-        Message m;
-        String op = in.readOp();
-
-        switch (op) {
-            case "ACK" + Message.TERM1 -> m = new Ack(in);
-            case "BOUT" + Message.DELIM -> m = new Bout(in);
-            case "CLNG" + Message.DELIM -> m = new Challenge(in);
-            case "CRED" + Message.DELIM -> m = new Credentials(in);
-            case "ERROR" + Message.DELIM -> m = new Error(in);
-            case "FABRIC" + Message.DELIM -> m = new Fabric(in);
-            case "ID" + Message.DELIM -> m = new ID(in);
-            case "KNOWP" + Message.TERM1 -> m = new Knowp(in);
-            default -> throw new ValidationException("Bad operation", op);
+        // Look up operation (including its following character) in place
+        int end = in.find(DELIM, TERM1) + 1;
+        Decoder decoder = OPERATIONS.get(in.buffer(), in.position(),
+                end - in.position());
+        if (decoder == null) {
+            throw new ValidationException("Bad operation", in.slice(end));
+        }
+        boolean terminated = in.buffer()[end - 1] == TERM1;
+        in.skip(end);
+        if (terminated) {
+            readTerminator(in);
         }
 
-        return m;
+        return decoder.decode(in);
     }
 
     /**
@@ -77,6 +142,23 @@ public abstract class Message {
      */
     public abstract String getOperation();
 
+    /**
+     * Reads the rest of a message whose operation is immediately terminated
+     *
+     * @param in message input object
+     * @throws ValidationException if anything precedes the terminator
+     * @throws IOException if I/O problem
+     */
+    private static void readTerminator(MessageInput in) throws ValidationException,
+            IOException {
+        // Check that the operation is immediately terminated
+        int end = in.find(Message.TERM2, Message.TERM2);
+        if (end != in.position()) {
+            throw new ValidationException("Bad message", in.slice(end + 1));
+        }
+        in.skip(end + 1);
+    }
+
     /**
      * Serializes message to given output sink
      *
@@ -87,21 +169,6 @@ public abstract class Message {
     public abstract void encode(MessageOutput out) throws NullPointerException,
             IOException;
 
-    /**
-     *
-     * @param msg input String to be validated
-     * @return String with terminating sequence removed
-     * @throws IOException if premature EOS
-     */
-    // package for static use by Message constructors
-    static String validateFabricMessage(String msg) throws IOException {
-        if (!msg.endsWith("" + Message.TERM1 + Message.TERM2)) {
-            throw new IOException("Premature EOS");
-        }
-        return msg.replace("" + Message.TERM1 +
-                Message.TERM2, "");
-    }
-
     /**
      * Returns whether Object o equals Message this
      *
@@ -10,9 +10,11 @@ package fabric.serialization;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -26,9 +28,62 @@ public class MessageInput {
     private static final Charset ENC = StandardCharsets.ISO_8859_1;
 
     /**
-     * Reader Object to make use of charset through stream
+     * Default size (in bytes) of the input buffer
      */
-    private final InputStreamReader reader;
+    private static final int BUFSIZE = 8192;
+
+    /**
+     * Size (in bytes) of the chunks that decoded Base64 is collected in
+     */
+    private static final int CHUNKSIZE = 65536;
+
+    /**
+     * Base64 alphabet (RFC 4648 section 4)
+     */
+    private static final String BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * Base64 value of each byte, or -1 if not in the alphabet
+     */
+    private static final byte[] DECODE = new byte[256];
+
+    /**
+     * Padding character for Base64 encodings
+     */
+    private static final byte PAD = '=';
+
+    /**
+     * Padding state once a padded unit is complete
+     */
+    private static final int PADDED = 2;
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < BASE64.length(); ++i) {
+            DECODE[BASE64.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * Byte input source (null if input is a fixed range of bytes)
+     */
+    private final InputStream in;
+
+    /**
+     * Buffer of bytes read from in but not yet consumed
+     */
+    private byte[] buffer;
+
+    /**
+     * Index of the next unconsumed byte in buffer
+     */
+    private int pos;
+
+    /**
+     * Index one past the last valid byte in buffer
+     */
+    private int limit;
 
     /**
      * Constructs a new input source from an InputStream
@@ -37,45 +92,473 @@ public class MessageInput {
      * @throws NullPointerException if in is null
      */
     public MessageInput(InputStream in) throws NullPointerException {
-        reader = new InputStreamReader(
-                Objects.requireNonNull(in, "Null input stream"), ENC);
+        this.in = Objects.requireNonNull(in, "Null input stream");
+        this.buffer = new byte[BUFSIZE];
+    }
+
+    /**
+     * Constructs a new input source over a range of bytes, which are read in
+     * place rather than copied. The range ends the input.
+     *
+     * @param bytes array holding the input
+     * @param off index of the first byte of input
+     * @param len number of bytes of input
+     * @throws NullPointerException if bytes is null
+     * @throws IndexOutOfBoundsException if the range is not within bytes
+     */
+    public MessageInput(byte[] bytes, int off, int len)
+            throws NullPointerException, IndexOutOfBoundsException {
+        this.in = null;
+        wrap(bytes, off, len);
     }
 
     /**
-     * Reads the next delimited value from in and returns it to caller
+     * Replaces the input of a source constructed over a range of bytes with
+     * another range, so one source can decode message after message in place
      *
-     * @return value read from in
+     * @param bytes array holding the input
+     * @param off index of the first byte of input
+     * @param len number of bytes of input
+     * @throws NullPointerException if bytes is null
+     * @throws IndexOutOfBoundsException if the range is not within bytes
+     * @throws IllegalStateException if the source reads from a stream
+     */
+    public void reset(byte[] bytes, int off, int len)
+            throws NullPointerException, IndexOutOfBoundsException,
+            IllegalStateException {
+        if (in != null) {
+            throw new IllegalStateException("Input is a stream");
+        }
+        wrap(bytes, off, len);
+    }
+
+    /**
+     * Makes a range of bytes the input
+     *
+     * @param bytes array holding the input
+     * @param off index of the first byte of input
+     * @param len number of bytes of input
+     * @throws NullPointerException if bytes is null
+     * @throws IndexOutOfBoundsException if the range is not within bytes
+     */
+    private void wrap(byte[] bytes, int off, int len)
+            throws NullPointerException, IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, Objects.requireNonNull(bytes,
+                "Null input bytes").length);
+        this.buffer = bytes;
+        this.pos = off;
+        this.limit = off + len;
+    }
+
+    /**
+     * Returns whether in has ended cleanly, with no bytes left before the
+     * next message. Blocks until at least one byte of the next message is
+     * available or in ends.
+     *
+     * @return true if in is at EOS with nothing buffered; false otherwise
      * @throws IOException if I/O problem
      */
-    String readOp() throws IOException {
-        int c;
-        StringBuilder stringBuilder = new StringBuilder();
-        do {
-            c = reader.read();
-            if (c == -1) {
+    public boolean isEndOfStream() throws IOException {
+        return pos == limit && !fill();
+    }
+
+    /**
+     * Returns the number of bytes that can be read without blocking, which
+     * is nonzero when part of a further message has already been received
+     *
+     * @return number of buffered bytes not yet consumed
+     */
+    public int available() {
+        return limit - pos;
+    }
+
+    /**
+     * Reads the next delimited token from in, checking it against a character
+     * class before it is converted to a String. The delimiter is consumed but
+     * not returned.
+     *
+     * @param valid character class the token must match
+     * @param error exception message if the token is invalid
+     * @return token read from in
+     * @throws ValidationException if the token is invalid or the message ends
+     * before the delimiter
+     * @throws IOException if I/O problem or premature EOS
+     */
+    String readToken(CharClass valid, String error)
+            throws ValidationException, IOException {
+        int end = find(Message.DELIM, Message.TERM2);
+        if (buffer[end] != Message.DELIM ||
+                !valid.matches(buffer, pos, end - pos)) {
+            throw new ValidationException(error, slice(end));
+        }
+        String token = slice(end);
+        ++pos;
+        return token;
+    }
+
+    /**
+     * Reads the rest of a Fabric Message as a single field, checking it
+     * against a character class before it is converted to a String. The
+     * message terminator is consumed but not returned.
+     *
+     * @param valid character class the field must match
+     * @param error exception message if the field is invalid
+     * @return field read from in
+     * @throws ValidationException if the field is invalid
+     * @throws IOException if I/O problem or premature EOS
+     */
+    String readField(CharClass valid, String error)
+            throws ValidationException, IOException {
+        int end = findTerminator();
+        boolean ok = valid.matches(buffer, pos, end - pos);
+        String field = slice(end);
+        pos += 2;
+        if (!ok) {
+            throw new ValidationException(error, field);
+        }
+        return field;
+    }
+
+    /**
+     * Reads the rest of a Fabric Message and checks that it is exactly the
+     * given literal. The message terminator is consumed.
+     *
+     * @param literal expected field
+     * @param error exception message if the field is not literal
+     * @throws ValidationException if the field is not literal
+     * @throws IOException if I/O problem or premature EOS
+     */
+    void readLiteral(String literal, String error)
+            throws ValidationException, IOException {
+        int end = findTerminator();
+        boolean ok = end - pos == literal.length();
+        for (int i = 0; ok && i < literal.length(); ++i) {
+            ok = buffer[pos + i] == (byte) literal.charAt(i);
+        }
+        if (!ok) {
+            String field = slice(end);
+            pos += 2;
+            throw new ValidationException(error, field);
+        }
+        pos = end + 2;
+    }
+
+    /**
+     * Reads Base64 from in to the end of a Fabric Message and returns the
+     * decoded bytes. Input is decoded as it is buffered, so the encoded text
+     * is never held in memory as a whole. Once the message terminator has
+     * been buffered the rest is decoded straight into an array of exactly the
+     * decoded size, which is returned without copying if the terminator was
+     * already buffered at the start.
+     *
+     * @return decoded bytes
+     * @throws ValidationException if input is not valid Base64 or is not
+     * terminated by the two char message terminator sequence
+     * @throws IOException if I/O problem or premature EOS
+     */
+    byte[] readBase64() throws ValidationException, IOException {
+        int rest = decodedSize(0);
+        Chunks out = new Chunks(rest < 0 ? CHUNKSIZE : rest);
+        boolean sized = rest >= 0;
+        int bits = 0;
+        // number of characters read in the current 4 character unit
+        int count = 0;
+        // number of padding characters read (PADDED once the unit is done)
+        int pad = 0;
+        while (true) {
+            while (pos < limit) {
+                byte b = buffer[pos++];
+                if (b == Message.TERM1) {
+                    if (pad == 1 || (pad == 0 && count == 1)) {
+                        throw new ValidationException("Bad image encoding",
+                                null);
+                    }
+                    // flush a final unit of 2 or 3 characters
+                    if (pad == 0 && count > 1) {
+                        out.put(bits >> (count == 2 ? 4 : 10));
+                        if (count == 3) {
+                            out.put(bits >> 2);
+                        }
+                    }
+                    readTerminator();
+                    return out.toArray();
+                }
+                if (b == PAD && count >= 2 && pad < PADDED) {
+                    // "xxx=" is done after one pad and "xx==" after two
+                    if (count == 3) {
+                        out.put(bits >> 10);
+                        out.put(bits >> 2);
+                        pad = PADDED;
+                    } else if (++pad == PADDED) {
+                        out.put(bits >> 4);
+                    }
+                    continue;
+                }
+                int v = DECODE[b & 0xFF];
+                if (v < 0 || pad != 0) {
+                    throw new ValidationException("Bad image encoding", null);
+                }
+                bits = bits << 6 | v;
+                if (++count == 4) {
+                    out.put(bits >> 16);
+                    out.put(bits >> 8);
+                    out.put(bits);
+                    bits = count = 0;
+                }
+            }
+            if (!fill()) {
                 throw new IOException("Premature EOS");
             }
-            stringBuilder.append((char) c);
-        } while (c != Message.TERM1 && c != Message.DELIM);
-        return stringBuilder.toString();
+            // a unit completed by padding has already been stored
+            if (!sized && (rest = decodedSize(pad == PADDED ? 0 :
+                    count)) >= 0) {
+                out.settle(rest);
+                sized = true;
+            }
+        }
     }
 
     /**
-     * Reads from in to the end of a Fabric Message
+     * Buffers input through the next occurrence of either stop character and
+     * returns its index in the buffer. The index is only valid until the next
+     * call to find.
      *
-     * @return String containing all bytes read
-     * @throws IOException if I/O problem
+     * @param stop1 first stop character
+     * @param stop2 second stop character
+     * @return buffer index of the first stop character found
+     * @throws IOException if I/O problem or premature EOS
      */
-    String readLine() throws IOException {
-        int c;
-        StringBuilder stringBuilder = new StringBuilder();
+    int find(char stop1, char stop2) throws IOException {
+        byte b1 = (byte) stop1;
+        byte b2 = (byte) stop2;
+        int scanned = 0;
         do {
-            c = reader.read();
-            if (c == -1) {
-                throw new IOException("Premature EOS");
+            for (int i = pos + scanned; i < limit; ++i) {
+                if (buffer[i] == b1 || buffer[i] == b2) {
+                    return i;
+                }
+            }
+            // pos may move when the buffer is compacted, so track progress
+            // relative to it
+            scanned = limit - pos;
+        } while (fill());
+        throw new IOException("Premature EOS");
+    }
+
+    /**
+     * Buffers input through the end of a Fabric Message and returns the
+     * buffer index of its first terminating character
+     *
+     * @return buffer index of the first terminating character
+     * @throws IOException if I/O problem or premature EOS (including a line
+     * that is not ended by the two char message terminator sequence)
+     */
+    int findTerminator() throws IOException {
+        int end = find(Message.TERM2, Message.TERM2);
+        if (end == pos || buffer[end - 1] != Message.TERM1) {
+            throw new IOException("Premature EOS");
+        }
+        return end - 1;
+    }
+
+    /**
+     * Returns the buffer holding the bytes located by find
+     *
+     * @return input buffer
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer index of the next unconsumed byte
+     *
+     * @return buffer index of the next unconsumed byte
+     */
+    int position() {
+        return pos;
+    }
+
+    /**
+     * Consumes all buffered bytes before end
+     *
+     * @param end buffer index one past the last byte to consume
+     */
+    void skip(int end) {
+        pos = end;
+    }
+
+    /**
+     * Consumes all buffered bytes before end and returns them as a String
+     *
+     * @param end buffer index one past the last byte to consume
+     * @return String containing the consumed bytes
+     */
+    String slice(int end) {
+        String s = new String(buffer, pos, end - pos, ENC);
+        pos = end;
+        return s;
+    }
+
+    /**
+     * Consumes the second character of the message terminator sequence
+     *
+     * @throws ValidationException if the next byte is not the second
+     * terminating character
+     * @throws IOException if I/O problem or premature EOS
+     */
+    private void readTerminator() throws ValidationException, IOException {
+        if (pos == limit && !fill()) {
+            throw new IOException("Premature EOS");
+        }
+        if (buffer[pos++] != Message.TERM2) {
+            throw new ValidationException("Bad message terminator", null);
+        }
+    }
+
+    /**
+     * Returns the decoded size of the Base64 buffered ahead of the message
+     * terminator
+     *
+     * @param count number of characters of the current unit already read
+     * @return decoded size in bytes of those characters and the ones ahead,
+     * or -1 if the terminator has not been buffered yet
+     */
+    private int decodedSize(int count) {
+        for (int i = pos; i < limit; ++i) {
+            if (buffer[i] == Message.TERM1) {
+                int end = i;
+                while (end > pos && buffer[end - 1] == PAD) {
+                    --end;
+                }
+                int chars = count + end - pos;
+                return chars / 4 * 3 + Math.max(chars % 4 - 1, 0);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads more bytes from in, compacting or growing the buffer as needed
+     *
+     * @return false if in is at EOS; true otherwise
+     * @throws IOException if I/O problem
+     */
+    private boolean fill() throws IOException {
+        if (in == null) {
+            // the buffer is someone else's range, so never move or replace it
+            return false;
+        }
+        if (pos == limit) {
+            // nothing left to keep, so drop back to a default sized buffer
+            pos = limit = 0;
+            if (buffer.length > BUFSIZE) {
+                buffer = new byte[BUFSIZE];
+            }
+        } else if (limit == buffer.length) {
+            if (pos > 0) {
+                System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            } else {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * Growable byte sequence stored as a list of chunks so that growing never
+     * copies what has already been stored
+     */
+    private static final class Chunks {
+
+        /**
+         * Filled chunks
+         */
+        private final List<byte[]> full = new ArrayList<>();
+
+        /**
+         * Chunk currently being filled
+         */
+        private byte[] chunk;
+
+        /**
+         * Number of bytes stored in chunk
+         */
+        private int len;
+
+        /**
+         * Number of bytes stored in full
+         */
+        private int size;
+
+        /**
+         * Constructs an empty sequence
+         *
+         * @param initial size of the first chunk
+         */
+        Chunks(int initial) {
+            chunk = new byte[initial];
+        }
+
+        /**
+         * Appends the low byte of b
+         *
+         * @param b byte to append
+         */
+        void put(int b) {
+            if (len == chunk.length) {
+                full.add(chunk);
+                size += len;
+                chunk = new byte[CHUNKSIZE];
+                len = 0;
+            }
+            chunk[len++] = (byte) b;
+        }
+
+        /**
+         * Moves the stored bytes into a single array with room for exactly
+         * the given number of bytes more, which later puts fill
+         *
+         * @param more number of bytes still to be appended
+         */
+        void settle(int more) {
+            byte[] bytes = new byte[size + len + more];
+            int off = 0;
+            for (byte[] c : full) {
+                System.arraycopy(c, 0, bytes, off, c.length);
+                off += c.length;
+            }
+            System.arraycopy(chunk, 0, bytes, off, len);
+            full.clear();
+            chunk = bytes;
+            len += off;
+            size = 0;
+        }
+
+        /**
+         * Returns the stored bytes as a single right-sized array
+         *
+         * @return stored bytes
+         */
+        byte[] toArray() {
+            if (full.isEmpty() && len == chunk.length) {
+                return chunk;
+            }
+            byte[] bytes = new byte[size + len];
+            int off = 0;
+            for (byte[] c : full) {
+                System.arraycopy(c, 0, bytes, off, c.length);
+                off += c.length;
             }
-            stringBuilder.append((char) c);
-        } while (c != Message.TERM2);
-        return stringBuilder.toString();
+            System.arraycopy(chunk, 0, bytes, off, len);
+            return bytes;
+        }
     }
 }
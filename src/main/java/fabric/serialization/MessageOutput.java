@@ -9,27 +9,61 @@
 package fabric.serialization;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
- * Serialization output sink
+ * Serialization output sink. Each message is assembled into a pooled frame
+ * buffer and written to the underlying stream with a single write when it is
+ * complete. While corked, complete messages are held back so that several of
+ * them go out in one write on flush.
  */
 public class MessageOutput {
 
     /**
-     * Encoding to use for serialization
+     * Size (in bytes) of frame buffers; larger frames are written in pieces
      */
-    private static final Charset ENC = StandardCharsets.ISO_8859_1;
+    private static final int BUFSIZE = 8192;
+
+    /**
+     * Maximum number of idle frame buffers kept for reuse
+     */
+    private static final int POOLSIZE = 256;
+
+    /**
+     * Idle frame buffers shared by all output sinks
+     */
+    private static final BlockingQueue<byte[]> POOL =
+            new ArrayBlockingQueue<>(POOLSIZE);
 
     /**
      * Output stream to which serialized bytes will be written
      */
     private final OutputStream out;
 
+    /**
+     * View of the frame for streaming a single field, which leaves out open
+     * when closed
+     */
+    private final OutputStream field;
+
+    /**
+     * Buffer holding the unwritten frame (null if none is held)
+     */
+    private byte[] frame;
+
+    /**
+     * Number of bytes in frame
+     */
+    private int len;
+
+    /**
+     * Whether complete messages are held until flush
+     */
+    private boolean corked;
+
     /**
      * Constructs a new output sink from an OutputStream
      *
@@ -38,6 +72,43 @@ public class MessageOutput {
      */
     public MessageOutput(OutputStream out) throws NullPointerException {
         this.out = Objects.requireNonNull(out, "Null output stream");
+        this.field = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                writeByte(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeBytes(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Holds complete messages until the next flush instead of writing each
+     * one as it is finished
+     */
+    public void cork() {
+        corked = true;
+    }
+
+    /**
+     * Writes all held messages to out in a single write, flushes out, and
+     * ends any cork
+     *
+     * @throws IOException if I/O problem
+     */
+    public void flush() throws IOException {
+        corked = false;
+        try {
+            if (len > 0) {
+                out.write(frame, 0, len);
+            }
+            out.flush();
+        } finally {
+            release();
+        }
     }
 
     /**
@@ -48,11 +119,163 @@ public class MessageOutput {
      * @throws IOException if I/O problem
      */
     void writeMessage(String... a) throws IOException {
-        for (int i = 0; i < a.length; ++i) {
-            out.write(a[i].getBytes(ENC));
-            out.write(i == a.length - 1 ?
-                    ("" + Message.TERM1 + Message.TERM2).getBytes(ENC) :
-                    ("" + Message.DELIM).getBytes(ENC));
+        for (int i = 0; i < a.length - 1; ++i) {
+            writeField(a[i]);
+        }
+        writeString(a[a.length - 1]);
+        endMessage();
+    }
+
+    /**
+     * Writes an operation and a single pre-encoded field to out, delimited
+     * by message delimiter and terminated by the two char message terminator
+     * sequence
+     *
+     * @param op operation to be written
+     * @param field encoded field
+     * @throws IOException if I/O problem
+     */
+    void writeMessage(String op, byte[] field) throws IOException {
+        writeField(op);
+        writeBytes(field, 0, field.length);
+        endMessage();
+    }
+
+    /**
+     * Writes the provided string to out followed by the message delimiter
+     *
+     * @param s string to be written to out
+     * @throws IOException if I/O problem
+     */
+    void writeField(String s) throws IOException {
+        writeString(s);
+        writeByte(Message.DELIM);
+    }
+
+    /**
+     * Returns a stream for writing the bytes of the last field of a message
+     * into the frame. Closing the stream does not close out, and the message
+     * must still be finished with endMessage.
+     *
+     * @return stream writing into the frame
+     */
+    OutputStream fieldStream() {
+        return field;
+    }
+
+    /**
+     * Writes the two char message terminator sequence to out, writing the
+     * frame to out unless corked
+     *
+     * @throws IOException if I/O problem
+     */
+    void endMessage() throws IOException {
+        writeByte(Message.TERM1);
+        writeByte(Message.TERM2);
+        if (!corked) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes a complete pre-encoded message to out, writing the frame to out
+     * unless corked
+     *
+     * @param message encoded message, including its terminator
+     * @throws IOException if I/O problem
+     */
+    void writeFrame(byte[] message) throws IOException {
+        writeBytes(message, 0, message.length);
+        if (!corked) {
+            flush();
+        }
+    }
+
+    /**
+     * Appends the ISO-8859-1 encoding of a string to the frame
+     *
+     * @param s string to be written
+     * @throws IOException if I/O problem
+     */
+    private void writeString(String s) throws IOException {
+        for (int i = 0; i < s.length(); ++i) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    /**
+     * Appends a byte to the frame, writing the frame to out if it is full
+     *
+     * @param b byte to be written
+     * @throws IOException if I/O problem
+     */
+    private void writeByte(int b) throws IOException {
+        if (frame == null) {
+            acquire();
+        } else if (len == frame.length) {
+            spill();
+        }
+        frame[len++] = (byte) b;
+    }
+
+    /**
+     * Appends bytes to the frame, writing the frame to out as it fills
+     *
+     * @param b bytes to be written
+     * @param off index of the first byte
+     * @param n number of bytes
+     * @throws IOException if I/O problem
+     */
+    private void writeBytes(byte[] b, int off, int n) throws IOException {
+        if (frame == null) {
+            acquire();
+        }
+        if (len + n > frame.length) {
+            spill();
+            // a run at least as large as the frame gains nothing from a copy
+            if (n >= frame.length) {
+                out.write(b, off, n);
+                return;
+            }
+        }
+        System.arraycopy(b, off, frame, len, n);
+        len += n;
+    }
+
+    /**
+     * Writes the partial frame to out to make room for more
+     *
+     * @throws IOException if I/O problem
+     */
+    private void spill() throws IOException {
+        try {
+            out.write(frame, 0, len);
+        } catch (IOException ex) {
+            release();
+            throw ex;
+        }
+        len = 0;
+    }
+
+    /**
+     * Takes a frame buffer from the pool, or allocates one if it is empty
+     */
+    private void acquire() {
+        frame = POOL.poll();
+        if (frame == null) {
+            frame = new byte[BUFSIZE];
+        }
+        len = 0;
+    }
+
+    /**
+     * Discards the frame and returns its buffer to the pool
+     */
+    private void release() {
+        if (frame != null) {
+            POOL.offer(frame);
+            frame = null;
         }
+        len = 0;
     }
 }
@@ -0,0 +1,149 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Perfect hash table from encoded operations (including the character that
+ * follows them) to message decoders. Lookups work directly on input bytes and
+ * cost one hash and one comparison; registration rebuilds the table.
+ */
+final class OpTable {
+
+    /**
+     * Multiplier used to derive successive hash seeds
+     */
+    private static final int SEEDSTEP = 0x9E3779B9;
+
+    /**
+     * Maximum number of seeds tried for each table size
+     */
+    private static final int SEEDTRIES = 64;
+
+    /**
+     * Registered operation and its decoder
+     *
+     * @param op encoded operation, including the character that follows it
+     * @param decoder decoder for the rest of the message
+     */
+    private record Entry(byte[] op, Message.Decoder decoder) {}
+
+    /**
+     * Immutable snapshot of the table
+     *
+     * @param slots entries indexed by hash (null if empty)
+     * @param seed hash multiplier with no collisions among entries
+     * @param shift shift reducing a hash to a slot index
+     */
+    private record Table(Entry[] slots, int seed, int shift) {}
+
+    /**
+     * All registered entries (guarded by this)
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Current table, replaced as a whole on registration
+     */
+    private volatile Table table = new Table(new Entry[2], 1, 31);
+
+    /**
+     * Registers a decoder for an encoded operation
+     *
+     * @param op encoded operation, including the character that follows it
+     * @param decoder decoder for the rest of the message
+     * @throws IllegalArgumentException if op is already registered
+     */
+    synchronized void put(byte[] op, Message.Decoder decoder)
+            throws IllegalArgumentException {
+        for (Entry e : entries) {
+            if (Arrays.equals(e.op(), op)) {
+                throw new IllegalArgumentException("Operation already " +
+                        "registered: " + new String(op,
+                        StandardCharsets.ISO_8859_1).trim());
+            }
+        }
+        entries.add(new Entry(op.clone(), decoder));
+        table = build(entries);
+    }
+
+    /**
+     * Returns the decoder for the encoded operation in a range of bytes
+     *
+     * @param b bytes holding the encoded operation
+     * @param off index of the first byte of the operation
+     * @param len length of the operation, including the character that
+     *            follows it
+     * @return decoder for the operation, or null if not registered
+     */
+    Message.Decoder get(byte[] b, int off, int len) {
+        Table t = table;
+        Entry e = t.slots()[(hash(b, off, len) * t.seed()) >>> t.shift()];
+        if (e == null || e.op().length != len) {
+            return null;
+        }
+        for (int i = 0; i < len; ++i) {
+            if (e.op()[i] != b[off + i]) {
+                return null;
+            }
+        }
+        return e.decoder();
+    }
+
+    /**
+     * Builds a collision-free table for the given entries, doubling the
+     * table size until a seed without collisions is found
+     *
+     * @param entries entries to be placed
+     * @return table holding every entry in its own slot
+     */
+    private static Table build(List<Entry> entries) {
+        for (int bits = 32 - Integer.numberOfLeadingZeros(
+                2 * entries.size() - 1); ; ++bits) {
+            int seed = 1;
+            for (int i = 0; i < SEEDTRIES; ++i, seed = seed * SEEDSTEP | 1) {
+                Entry[] slots = new Entry[1 << bits];
+                int shift = 32 - bits;
+                boolean perfect = true;
+                for (Entry e : entries) {
+                    int slot = (hash(e.op(), 0, e.op().length) * seed) >>>
+                            shift;
+                    if (slots[slot] != null) {
+                        perfect = false;
+                        break;
+                    }
+                    slots[slot] = e;
+                }
+                if (perfect) {
+                    return new Table(slots, seed, shift);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hashes a range of bytes
+     *
+     * @param b bytes to be hashed
+     * @param off index of the first byte
+     * @param len number of bytes
+     * @return hash of the bytes
+     */
+    private static int hash(byte[] b, int off, int len) {
+        int h = len;
+        for (int i = off; i < off + len; ++i) {
+            h = 31 * h + b[i];
+        }
+        return h;
+    }
+}
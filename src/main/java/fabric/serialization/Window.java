@@ -0,0 +1,155 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.serialization;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Represents a Window and provides serialization/deserialization. A client
+ * sends a Window to ask how many posts it may send ahead of their ACKs, and
+ * the server answers with a Window holding the size it grants.
+ */
+public class Window extends Message {
+
+    /**
+     * Operation ID for Window messages
+     */
+    private static final String WINDOWOP = "WINDOW";
+
+    /**
+     * Minimum window size
+     */
+    private static final int MINSIZE = 1;
+
+    /**
+     * Maximum window size
+     */
+    private static final int MAXSIZE = 65535;
+
+    /**
+     * Number of posts that may be sent ahead of their ACKs
+     */
+    private int size;
+
+    /**
+     * Constructs Window message
+     *
+     * @param size number of posts that may be sent ahead of their ACKs
+     * @throws ValidationException if size is not between 1 and 65535
+     */
+    public Window(int size) throws ValidationException {
+        this.size = validateSize(size);
+    }
+
+    /**
+     * Constructs Window from MessageInput
+     *
+     * @param in message input object
+     * @throws ValidationException if data from input is invalid
+     * @throws IOException if I/O problem
+     */
+    protected Window(MessageInput in) throws ValidationException, IOException {
+        // Check that size can be parsed as an int
+        String size = in.readField(CharClass.DIGITS, "Invalid window size");
+        try {
+            this.size = validateSize(Integer.parseInt(size));
+        } catch (NumberFormatException ex) {
+            throw new ValidationException("Invalid window size", ex, size);
+        }
+    }
+
+    /**
+     * Returns a String representation
+     *
+     * @return a String representation
+     */
+    public String toString() {
+        return "Window: size=" + this.size;
+    }
+
+    /**
+     * Returns window size
+     *
+     * @return window size
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Sets window size
+     *
+     * @param size new window size
+     * @return this object with new window size
+     * @throws ValidationException if size is not between 1 and 65535
+     */
+    public Window setSize(int size) throws ValidationException {
+        this.size = validateSize(size);
+        return this;
+    }
+
+    /**
+     * Returns message operation
+     *
+     * @return message operation
+     */
+    @Override
+    public String getOperation() {
+        return WINDOWOP;
+    }
+
+    /**
+     * Encodes a Window to output
+     *
+     * @param out serialization output sink
+     * @throws NullPointerException if out is null
+     * @throws IOException if I/O problem
+     */
+    @Override
+    public void encode(MessageOutput out) throws NullPointerException, IOException {
+        out.writeMessage(WINDOWOP, Integer.toString(size));
+    }
+
+    /**
+     * Returns whether a Window is equal to Object o
+     *
+     * @param o second object to be compared
+     * @return boolean representation of whether object and Window are equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o) && this.size == ((Window) o).size;
+    }
+
+    /**
+     * Returns an integer hash of a Window message for use in Collections
+     *
+     * @return an integer hash representing the Window message
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(WINDOWOP, this.size);
+    }
+
+    /**
+     * Validates that size is between 1 and 65535
+     *
+     * @param size window size
+     * @return size
+     * @throws ValidationException if validation fails
+     */
+    private static int validateSize(int size) throws ValidationException {
+        if (size < MINSIZE || size > MAXSIZE) {
+            throw new ValidationException("Invalid window size",
+                    Integer.toString(size));
+        }
+        return size;
+    }
+}
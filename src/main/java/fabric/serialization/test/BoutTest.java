@@ -11,6 +11,8 @@ package fabric.serialization.test;
 import fabric.serialization.*;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -18,6 +20,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -61,6 +64,24 @@ class BoutTest {
         assertArrayEquals(BOUTENC, bOut.toByteArray());
     }
 
+    /**
+     * Tests encode of images of each final unit size
+     *
+     * @param size image size in bytes
+     * @throws ValidationException if category or image are invalid
+     * @throws IOException if I/O problem
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3, 70000, 200001})
+    void encodeTestImageSizes(int size) throws ValidationException, IOException {
+        byte[] image = new byte[size];
+        new Random(size).nextBytes(image);
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        new Bout(CAT, image).encode(new MessageOutput(bOut));
+        assertArrayEquals(("BOUT movie " + Base64.getEncoder().withoutPadding()
+                .encodeToString(image) + "\r\n").getBytes(ENC), bOut.toByteArray());
+    }
+
     /**
      * Tests decode method for Bout messages
      */
@@ -88,6 +109,41 @@ class BoutTest {
             MessageInput mIn = new MessageInput(new ByteArrayInputStream(BOUTENCVAL));
             assertThrows(ValidationException.class, () -> {Message.decode(mIn);});
         }
+
+        /**
+         * Tests decode of padded and unpadded images of each final unit size
+         *
+         * @param size image size in bytes
+         * @throws ValidationException if category or image are invalid
+         * @throws IOException if I/O problem
+         */
+        @ParameterizedTest
+        @ValueSource(ints = {0, 1, 2, 3, 4, 5, 70000, 200001})
+        void decodeTestImageSizes(int size) throws ValidationException, IOException {
+            byte[] image = new byte[size];
+            new Random(size).nextBytes(image);
+            for (Base64.Encoder enc : new Base64.Encoder[] {Base64.getEncoder(),
+                    Base64.getEncoder().withoutPadding()}) {
+                MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                        ("BOUT movie " + enc.encodeToString(image) + "\r\n")
+                                .getBytes(ENC)));
+                assertArrayEquals(image, ((Bout) Message.decode(mIn)).getImage());
+            }
+        }
+
+        /**
+         * Tests decode ValidationException throw for bad image encodings
+         *
+         * @param image encoded image
+         */
+        @ParameterizedTest
+        @ValueSource(strings = {"aW1hZ2U!", "aW1hZ2U=x", "aW1hZ", "aW1h=",
+                "aW1hZ=", "aW1hZ2U=\rx", "aW1h Z2U"})
+        void decodeTestBadImage(String image) {
+            MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                    ("BOUT movie " + image + "\r\n").getBytes(ENC)));
+            assertThrows(ValidationException.class, () -> Message.decode(mIn));
+        }
     }
 
     /**
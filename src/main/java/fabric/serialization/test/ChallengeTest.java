@@ -95,6 +95,30 @@ class ChallengeTest {
         }
     }
 
+    /**
+     * Tests that a Challenge built from the digits of its nonce equals one
+     * built from the nonce and encodes the same
+     *
+     * @throws ValidationException if nonce is invalid
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void bytesConstructorTest() throws ValidationException, IOException {
+        Challenge c = new Challenge(SERVNONCE.getBytes(ENC));
+        assertEquals(CHALLENGE, c);
+        assertEquals(CHALLENGE.hashCode(), c.hashCode());
+        assertEquals(SERVNONCE, c.getNonce());
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        c.encode(new MessageOutput(bOut));
+        assertArrayEquals(CLNGENC, bOut.toByteArray());
+        assertThrows(ValidationException.class,
+                () -> new Challenge(BADSERVNONCE.getBytes(ENC)));
+        assertThrows(ValidationException.class,
+                () -> new Challenge(new byte[0]));
+        assertThrows(ValidationException.class,
+                () -> new Challenge((byte[]) null));
+    }
+
     /**
      * Tests toString return
      */
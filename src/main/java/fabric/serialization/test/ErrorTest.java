@@ -12,6 +12,8 @@ import fabric.serialization.*;
 import fabric.serialization.Error;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -99,6 +101,19 @@ class ErrorTest {
             assertThrows(ValidationException.class, () -> {Message.decode(mIn);});
         }
 
+        /**
+         * Tests decode ValidationException throw for bad codes
+         *
+         * @param code encoded error code
+         */
+        @ParameterizedTest
+        @ValueSource(strings = {"2x0", "99999999999", "99", ""})
+        void decodeTestBadCode(String code) {
+            MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                    ("ERROR " + code + " error msg\r\n").getBytes(ENC)));
+            assertThrows(ValidationException.class, () -> Message.decode(mIn));
+        }
+
         /**
          * Tests decode IOException throw for early EOS
          */
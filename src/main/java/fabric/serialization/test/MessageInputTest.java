@@ -8,13 +8,21 @@
 
 package fabric.serialization.test;
 
-import fabric.serialization.MessageInput;
+import fabric.serialization.*;
+import fabric.serialization.Error;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Tests for MessageInput class
@@ -37,4 +45,193 @@ class MessageInputTest {
     void constructorTestNull() {
         assertThrows(NullPointerException.class, () -> {new MessageInput(null);});
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests decode of consecutive messages from a single input source
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void sequentialDecodeTest() throws ValidationException, IOException {
+        MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                "ID testing\r\nACK\r\nCLNG 123\r\n".getBytes(ENC)));
+        assertEquals(new ID(FIRST), Message.decode(mIn));
+        assertEquals(new Ack(), Message.decode(mIn));
+        assertEquals(new Challenge("123"), Message.decode(mIn));
+    }
+
+    /**
+     * Tests clean end of stream is only reported between messages
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void endOfStreamTest() throws ValidationException, IOException {
+        MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                "ACK\r\nKNOWP\r\n".getBytes(ENC)));
+        assertFalse(mIn.isEndOfStream());
+        assertEquals(new Ack(), Message.decode(mIn));
+        assertFalse(mIn.isEndOfStream());
+        assertEquals(new Knowp(), Message.decode(mIn));
+        assertTrue(mIn.isEndOfStream());
+        assertTrue(mIn.isEndOfStream());
+    }
+
+    /**
+     * Tests available counts only the buffered bytes of further messages
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void availableTest() throws ValidationException, IOException {
+        MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                "ACK\r\nKNOWP\r\n".getBytes(ENC)));
+        assertEquals(0, mIn.available());
+        assertEquals(new Ack(), Message.decode(mIn));
+        assertEquals(7, mIn.available());
+        assertEquals(new Knowp(), Message.decode(mIn));
+        assertEquals(0, mIn.available());
+    }
+
+    /**
+     * Tests decode when the input source returns a single byte per read
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void trickleDecodeTest() throws ValidationException, IOException {
+        InputStream trickle = new ByteArrayInputStream(
+                "ERROR 200 and more\r\n".getBytes(ENC)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        MessageInput mIn = new MessageInput(trickle);
+        assertEquals(new Error(200, END),
+                Message.decode(mIn));
+    }
+
+    /**
+     * Tests decode of a message larger than the input buffer
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void largeDecodeTest() throws ValidationException, IOException {
+        byte[] image = new byte[100000];
+        Arrays.fill(image, (byte) 7);
+        Bout bout = new Bout(FIRST, image);
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        bout.encode(new MessageOutput(bOut));
+        bout.encode(new MessageOutput(bOut));
+        MessageInput mIn = new MessageInput(
+                new ByteArrayInputStream(bOut.toByteArray()));
+        assertEquals(bout, Message.decode(mIn));
+        assertEquals(bout, Message.decode(mIn));
+    }
+
+    /**
+     * Tests decode of images of many sizes, including every padding, when
+     * the input source returns a few bytes per read, so the end of the image
+     * is not buffered until it arrives
+     *
+     * @param size image size in bytes
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 65535, 65536, 65537, 300001})
+    void streamedImageTest(int size) throws ValidationException,
+            IOException {
+        byte[] image = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            image[i] = (byte) (i * 31 + i / 256);
+        }
+        Bout bout = new Bout(FIRST, image);
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        bout.encode(new MessageOutput(bOut));
+        InputStream slow = new ByteArrayInputStream(bOut.toByteArray()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        assertEquals(bout, Message.decode(new MessageInput(slow)));
+    }
+
+    /**
+     * Tests IOException throw for premature end of stream
+     */
+    @Test
+    void prematureEOSTest() {
+        MessageInput mIn = new MessageInput(
+                new ByteArrayInputStream("ID test".getBytes(ENC)));
+        assertThrows(IOException.class, () -> Message.decode(mIn));
+    }
+
+    /**
+     * Tests decode of messages from ranges of one array, reusing the source
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void rangeDecodeTest() throws ValidationException, IOException {
+        byte[] bytes = "xxID testing\r\nACK\r\nxx".getBytes(ENC);
+        MessageInput mIn = new MessageInput(bytes, 2, 12);
+        assertEquals(new ID(FIRST), Message.decode(mIn));
+        assertTrue(mIn.isEndOfStream());
+        mIn.reset(bytes, 14, 5);
+        assertEquals(new Ack(), Message.decode(mIn));
+        assertTrue(mIn.isEndOfStream());
+    }
+
+    /**
+     * Tests decode of a large message from a range of an array
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void largeRangeDecodeTest() throws ValidationException, IOException {
+        byte[] image = new byte[100000];
+        Arrays.fill(image, (byte) 7);
+        Bout bout = new Bout(FIRST, image);
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        bout.encode(new MessageOutput(bOut));
+        byte[] bytes = bOut.toByteArray();
+        assertEquals(bout, Message.decode(new MessageInput(bytes, 0,
+                bytes.length)));
+    }
+
+    /**
+     * Tests IOException throw for a message cut off by the end of its range,
+     * even when the array continues past it
+     */
+    @Test
+    void rangePrematureEOSTest() {
+        byte[] bytes = "ID testing\r\n".getBytes(ENC);
+        MessageInput mIn = new MessageInput(bytes, 0, 9);
+        assertThrows(IOException.class, () -> Message.decode(mIn));
+    }
+
+    /**
+     * Tests range constructor and reset argument checks
+     */
+    @Test
+    void rangeArgumentTest() {
+        assertThrows(NullPointerException.class,
+                () -> new MessageInput(null, 0, 0));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> new MessageInput(STRINGENC, 1, STRINGENC.length));
+        assertThrows(IllegalStateException.class,
+                () -> new MessageInput(new ByteArrayInputStream(STRINGENC))
+                        .reset(STRINGENC, 0, STRINGENC.length));
+    }
+}
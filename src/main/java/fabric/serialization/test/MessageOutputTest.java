@@ -8,13 +8,16 @@
 
 package fabric.serialization.test;
 
-import fabric.serialization.MessageOutput;
+import fabric.serialization.*;
+import fabric.serialization.Error;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Tests for MessageOutput class
@@ -34,4 +37,58 @@ class MessageOutputTest {
     void constructorTestNull() {
         assertThrows(NullPointerException.class, () -> {new MessageOutput(null);});
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that each message is written to the stream with a single write
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void singleWriteTest() throws ValidationException, IOException {
+        CountingStream bOut = new CountingStream();
+        MessageOutput mOut = new MessageOutput(bOut);
+        new ID(STRING).encode(mOut);
+        new Error(200, STRING + " more").encode(mOut);
+        assertEquals(2, bOut.writes);
+        assertEquals("ID testing\r\nERROR 200 testing more\r\n",
+                bOut.toString(ENC));
+    }
+
+    /**
+     * Tests that corked messages are held until flush and then written with
+     * a single write
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void corkTest() throws ValidationException, IOException {
+        CountingStream bOut = new CountingStream();
+        MessageOutput mOut = new MessageOutput(bOut);
+        mOut.cork();
+        new Ack().encode(mOut);
+        new Challenge("123").encode(mOut);
+        assertEquals(0, bOut.size());
+        mOut.flush();
+        assertEquals(1, bOut.writes);
+        assertEquals("ACK\r\nCLNG 123\r\n", bOut.toString(ENC));
+
+        // cork ends with flush
+        new Knowp().encode(mOut);
+        assertEquals(2, bOut.writes);
+    }
+
+    /**
+     * Output stream that counts calls to write
+     */
+    private static class CountingStream extends ByteArrayOutputStream {
+        private int writes;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            ++writes;
+            super.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.serialization.test;
+
+import fabric.serialization.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Message class operation dispatch
+ */
+class MessageTest {
+
+    private static final Charset ENC = StandardCharsets.ISO_8859_1;
+    private static final byte[] BADOPENC = "PONG\r\n".getBytes(ENC);
+
+    /**
+     * Message type defined outside the package, which registers itself
+     */
+    private static final class Ping extends Message {
+
+        /**
+         * The only Ping message
+         */
+        static final Ping PING = new Ping();
+
+        static {
+            register("PING", false, in -> PING);
+        }
+
+        /**
+         * Returns message operation
+         *
+         * @return message operation
+         */
+        @Override
+        public String getOperation() {
+            return "PING";
+        }
+
+        /**
+         * Serializes message to given output sink
+         *
+         * @param out serialization output sink
+         */
+        @Override
+        public void encode(MessageOutput out) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns an integer hash of a message object
+         *
+         * @return an integer hash representing the object
+         */
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+    }
+
+    /**
+     * Tests decode of operations that are immediately terminated
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void unfieldedDecodeTest() throws ValidationException, IOException {
+        MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                "ACK\r\nKNOWP\r\n".getBytes(ENC)));
+        assertEquals(new Ack(), Message.decode(mIn));
+        assertEquals(new Knowp(), Message.decode(mIn));
+    }
+
+    /**
+     * Tests decode of an operation registered by a message type of another
+     * package, whose terminator is read before its decoder is called
+     *
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void subclassDecodeTest() throws ValidationException, IOException {
+        // initializing Ping registers its operation
+        Message ping = Ping.PING;
+        MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                "PING\r\nACK\r\n".getBytes(ENC)));
+        assertSame(ping, Message.decode(mIn));
+        assertEquals(new Ack(), Message.decode(mIn));
+        assertThrows(ValidationException.class, () -> Message.decode(
+                new MessageInput(new ByteArrayInputStream(
+                        "PING x\r\n".getBytes(ENC)))));
+    }
+
+    /**
+     * Tests decode ValidationException throw for an unregistered operation
+     */
+    @Test
+    void unregisteredDecodeTest() {
+        MessageInput mIn = new MessageInput(new ByteArrayInputStream(BADOPENC));
+        ValidationException ex = assertThrows(ValidationException.class,
+                () -> Message.decode(mIn));
+        assertEquals("PONG\r", ex.getBadToken());
+    }
+
+    /**
+     * Tests decode ValidationException throw for operations that only match
+     * part of a registered operation, or are followed by the wrong character
+     *
+     * @param encoded encoded message
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"AC\r\n", "ACKS\r\n", "ACK x\r\n", "BOUT\r\n",
+            "KNOW\r\n", "ack\r\n", "\r\n"})
+    void mismatchedDecodeTest(String encoded) {
+        MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                encoded.getBytes(ENC)));
+        assertThrows(ValidationException.class, () -> Message.decode(mIn));
+    }
+
+    /**
+     * Messages with no fields, each with its shared instance and encoding
+     *
+     * @return shared message and its encoding
+     */
+    static Stream<Arguments> shared() {
+        return Stream.of(Arguments.of(Ack.ACK, "ACK\r\n"),
+                Arguments.of(Fabric.FABRIC, "FABRIC 1.0\r\n"),
+                Arguments.of(Knowp.KNOWP, "KNOWP\r\n"));
+    }
+
+    /**
+     * Tests that decode returns the shared message of a type with no fields
+     * and that the shared message encodes the same as a new one
+     *
+     * @param message shared message
+     * @param encoded its encoding
+     * @throws ValidationException if parse or validation problem
+     * @throws IOException if I/O problem
+     */
+    @ParameterizedTest
+    @MethodSource("shared")
+    void sharedTest(Message message, String encoded)
+            throws ValidationException, IOException {
+        MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                encoded.getBytes(ENC)));
+        assertSame(message, Message.decode(mIn));
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        message.encode(new MessageOutput(bOut));
+        assertArrayEquals(encoded.getBytes(ENC), bOut.toByteArray());
+    }
+}
@@ -0,0 +1,146 @@
+/************************************************
+ *
+ * Author: Bryce Robinson
+ * Assignment: Program 6
+ * Class: CSI 4321
+ *
+ ************************************************/
+
+package fabric.serialization.test;
+
+import fabric.serialization.*;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Window class, which extends Message class
+ */
+class WindowTest {
+    private static final Charset ENC = StandardCharsets.ISO_8859_1;
+    private static final String WINDOWOP = "WINDOW";
+    private static final int SIZE = 16;
+    private static final Window WINDOW;
+    private static final byte[] WINDOWENC = "WINDOW 16\r\n".getBytes(ENC);
+    private static final String WINDOWSTR = "Window: size=16";
+
+    static {
+        try {
+            WINDOW = new Window(SIZE);
+        } catch (ValidationException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tests if Window message encodes correctly to byte output
+     *
+     * @throws IOException if I/O problem
+     */
+    @Test
+    void encodeTest() throws IOException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        MessageOutput mOut = new MessageOutput(bOut);
+        WINDOW.encode(mOut);
+        assertArrayEquals(WINDOWENC, bOut.toByteArray());
+    }
+
+    /**
+     * Tests decode method for Window messages
+     */
+    @Nested
+    class decodeTests {
+        /**
+         * Tests happy-path decode for Window message
+         *
+         * @throws ValidationException if operation or size are invalid
+         * @throws IOException if I/O problem
+         */
+        @Test
+        void decodeTestGood() throws ValidationException, IOException {
+            MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                    WINDOWENC));
+            assertEquals(WINDOW, Message.decode(mIn));
+        }
+
+        /**
+         * Tests decode ValidationException throw for invalid sizes
+         *
+         * @param enc encoded Window with invalid size
+         */
+        @ParameterizedTest
+        @ValueSource(strings = {"WINDOW 0\r\n", "WINDOW 65536\r\n",
+                "WINDOW 99999999999\r\n", "WINDOW 1A\r\n", "WINDOW \r\n",
+                "WINDOW -1\r\n"})
+        void decodeTestInvalid(String enc) {
+            MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                    enc.getBytes(ENC)));
+            assertThrows(ValidationException.class, () -> Message.decode(mIn));
+        }
+
+        /**
+         * Tests decode IOException throw for early EOS
+         */
+        @Test
+        void decodeTestEOS() {
+            MessageInput mIn = new MessageInput(new ByteArrayInputStream(
+                    "WINDOW 1".getBytes(ENC)));
+            assertThrows(IOException.class, () -> Message.decode(mIn));
+        }
+    }
+
+    /**
+     * Tests toString return
+     */
+    @Test
+    void toStringTest() {
+        assertEquals(WINDOWSTR, WINDOW.toString());
+    }
+
+    /**
+     * Tests getOperation return for Window messages
+     */
+    @Test
+    void getOperationTest() {
+        assertEquals(WINDOWOP, WINDOW.getOperation());
+    }
+
+    /**
+     * Tests setSize method
+     */
+    @Nested
+    class setSizeTests {
+        /**
+         * Tests setSize with valid sizes
+         *
+         * @param size valid window size
+         * @throws ValidationException if size is invalid
+         */
+        @ParameterizedTest
+        @ValueSource(ints = {1, 16, 65535})
+        void setSizeTestValid(int size) throws ValidationException {
+            assertEquals(size, new Window(SIZE).setSize(size).getSize());
+        }
+
+        /**
+         * Tests ValidationException throw for invalid sizes
+         *
+         * @param size invalid window size
+         */
+        @ParameterizedTest
+        @ValueSource(ints = {0, -1, 65536})
+        void setSizeTestBad(int size) {
+            assertThrows(ValidationException.class, () ->
+                    new Window(SIZE).setSize(size));
+        }
+    }
+}
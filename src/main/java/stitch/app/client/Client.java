@@ -10,6 +10,7 @@ package stitch.app.client;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
@@ -109,9 +110,8 @@ public class Client {
                 }
 
                 // decode response
-                byte[] data = new byte[response.getLength()];
-                System.arraycopy(response.getData(), 0, data, 0, data.length);
-                r = new Response(data);
+                r = new Response(ByteBuffer.wrap(response.getData(), 0,
+                        response.getLength()));
                 rID = r.getQueryID();
 
                 // ignore responses with incorrect queryID
@@ -11,9 +11,12 @@ package stitch.app.server;
 import stitch.serialization.*;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
@@ -34,9 +37,11 @@ public class Server implements Runnable {
     private final int port;
 
     /**
-     * List to store all posts since server last restarted
+     * List to store all posts since server last restarted (added to by the
+     * Fabric post writer while read by this server's thread; guarded by
+     * itself). Posts are only ever appended.
      */
-    private final List<String> posts;
+    private final List<String> posts = new ArrayList<>();
 
     /**
      * Static Stitch Server logger
@@ -69,34 +74,47 @@ public class Server implements Runnable {
      */
     public Server(int port) {
         this.port = port;
-        this.posts = new ArrayList<>();
     }
 
     /**
-     * Adds a new post to the Stitch Server list
+     * Adds a batch of new posts to the Stitch Server list at once
      *
-     * @param post String representation of new post
+     * @param batch String representations of new posts, in order
      */
-    public void addPost(String post) {
-        posts.add(post);
+    public void addPosts(Collection<String> batch) {
+        synchronized (posts) {
+            posts.addAll(batch);
+        }
     }
 
     /**
-     * Default run method for Stitch server
+     * Default run method for Stitch server. Queries are received into and
+     * responses encoded straight into reusable buffers, so no per-packet
+     * arrays are allocated for sending.
      */
     @Override
     public void run() {
-        try (DatagramSocket socket = new DatagramSocket(port)) {
-            DatagramPacket packet;
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.bind(new InetSocketAddress(port));
+            ByteBuffer in = ByteBuffer.allocate(UDPMAX);
+            ByteBuffer out = ByteBuffer.allocateDirect(UDPMAX);
 
             while (true) {
                 Query q = null;
                 Response r = null;
-                packet = new DatagramPacket(new byte[UDPMAX], UDPMAX);
+                SocketAddress client;
 
                 // receive client query
+                in.clear();
+                try {
+                    client = channel.receive(in);
+                } catch (IOException ex) {
+                    logger.warning(() -> "Unable to communicate: " +
+                            ex.getMessage());
+                    continue;
+                }
                 try {
-                    q = receiveQuery(socket, packet);
+                    q = new Query(in.flip());
                     Query finalQ = q;
                     logger.info(() -> "Received message: " + finalQ);
                 } catch (CodeException ex) {
@@ -110,16 +128,15 @@ public class Server implements Runnable {
                 }
 
                 // send response
-                if (r != null) {
-                    packet.setData(r.encode());
-                    packet.setLength(packet.getData().length);
-                    try {
-                        Response finalR = r;
-                        logger.info(() -> "Sending message: " + finalR);
-                        socket.send(packet);
-                    } catch (IOException ex) {
-                        logger.warning(() -> "Unable to communicate: " + ex.getMessage());
-                    }
+                out.clear();
+                r.encodeTo(out).flip();
+                try {
+                    Response finalR = r;
+                    logger.info(() -> "Sending message: " + finalR);
+                    channel.send(out, client);
+                } catch (IOException ex) {
+                    logger.warning(() -> "Unable to communicate: " +
+                            ex.getMessage());
                 }
             }
         } catch (IOException ex) {
@@ -128,28 +145,6 @@ public class Server implements Runnable {
         }
     }
 
-    /**
-     * Receives a query from the given socket into the given packet and returns
-     * a deserialized representation
-     *
-     * @param socket the socket to receive from
-     * @param packet the packet to receive into
-     * @return the received Query
-     * @throws CodeException if invalid Query
-     */
-    private Query receiveQuery(DatagramSocket socket, DatagramPacket packet)
-            throws CodeException {
-        try {
-            socket.receive(packet);
-        } catch (IOException ex) {
-            logger.warning(() -> "Unable to communicate: " + ex.getMessage());
-            return null;
-        }
-        byte[] data = new byte[packet.getLength()];
-        System.arraycopy(packet.getData(), 0, data, 0, data.length);
-        return new Query(data);
-    }
-
     /**
      * Generates a Response with the appropriate size post list to be
      * serialized for transmission to client
@@ -159,14 +154,20 @@ public class Server implements Runnable {
      * @return the generated Response
      */
     private Response generateResponse(int requestedPosts, long queryID) {
-        int count = Math.min(requestedPosts, posts.size());
-        List<String> subset = posts.subList(0, count);
-        int size = 0;
-        for (int i = 0; i < subset.size(); ++i) {
-            size += subset.get(i).length();
-            if (size > UDPMAX - RLEN || i >= Response.MAXPOSTS) {
-                subset = subset.subList(0, i);
-                break;
+        List<String> subset = new ArrayList<>();
+        // copy only the posts that fit, holding off the writer meanwhile;
+        // each post costs its length plus a 2 byte length prefix
+        int size = RLEN;
+        synchronized (posts) {
+            int n = Math.min(posts.size(),
+                    Math.min(requestedPosts, Response.MAXPOSTS));
+            for (int i = 0; i < n; ++i) {
+                String post = posts.get(i);
+                size += 2 + post.length();
+                if (size > UDPMAX) {
+                    break;
+                }
+                subset.add(post);
             }
         }
         return new Response(queryID, ErrorCode.NOERROR, subset);
@@ -8,7 +8,7 @@
 
 package stitch.serialization;
 
-import java.math.BigInteger;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -21,7 +21,7 @@ public abstract class Message {
     /**
      * Length of packet header
      */
-    private static final int HLEN = 6;
+    static final int HLEN = 6;
 
     /**
      * Bit mask for version bit
@@ -81,7 +81,9 @@ public abstract class Message {
     }
 
     /**
-     * Creates a new message from deserialization
+     * Creates a new message from deserialization of the bytes between the
+     * position and limit of a buffer. Fields are read big-endian regardless
+     * of the order of buffer, and its position is left unchanged.
      *
      * @param buffer byte buffer containing packet to deserialize
      * @param query true if Query, false if Response
@@ -90,30 +92,27 @@ public abstract class Message {
      * (UNEXPECTEDPACKETTYPE), incorrect version (BADVERSION), bad reserve
      * (NETWORKERROR), or other validation problems (VALIDATIONERROR).
      */
-    protected Message(byte[] buffer, boolean query) throws CodeException {
+    protected Message(ByteBuffer buffer, boolean query) throws CodeException {
         // check for full header
-        if (buffer == null || buffer.length < HLEN) {
+        if (buffer == null || buffer.remaining() < HLEN) {
             throw new CodeException(ErrorCode.PACKETTOOSHORT);
         }
+        byte first = buffer.get(buffer.position());
         // check version (first four bits)
-        if (((buffer[0] & 0b1111_0000) ^ VERSION) != 0) {
+        if (((first & 0b1111_0000) ^ VERSION) != 0) {
             throw new CodeException(ErrorCode.BADVERSION);
         }
         // check type (fifth bit)
-        if ((query && ((byte) (buffer[0] & 0b0_1000) ^ QUERY) != 0) ||
-                (!query && (((byte) (buffer[0] & 0b0_1000) ^ RESPONSE) != 0))) {
+        if ((query && ((byte) (first & 0b0_1000) ^ QUERY) != 0) ||
+                (!query && (((byte) (first & 0b0_1000) ^ RESPONSE) != 0))) {
             throw new CodeException(ErrorCode.UNEXPECTEDPACKETTYPE);
         }
         // check reserved (last three bits)
-        if (((byte) (buffer[0] & 0b0111) ^ RSRVD) != 0) {
+        if (((byte) (first & 0b0111) ^ RSRVD) != 0) {
             throw new CodeException(ErrorCode.NETWORKERROR);
         }
-        try {
-            this.queryID = validateQueryID( new BigInteger(buffer, 2, 4)
-                    .intValue() & MAXQID);
-        } catch (IllegalArgumentException ex) {
-            throw new CodeException(ErrorCode.VALIDATIONERROR, ex);
-        }
+        this.queryID = (long) getUnsignedShort(buffer, buffer.position() + 2)
+                << 16 | getUnsignedShort(buffer, buffer.position() + 4);
     }
 
     /**
@@ -143,30 +142,58 @@ public abstract class Message {
      * @return serialized message
      */
     public byte[] encode() {
-        byte[] header = new byte[6];
-        header[0] = (byte) (VERSION | RSRVD);
-        header[2] = (byte) (this.queryID >> 24 & 0x0FF);
-        header[3] = (byte) (this.queryID >> 16 & 0x0FF);
-        header[4] = (byte) (this.queryID >> 8 & 0x0FF);
-        header[5] = (byte) (this.queryID & 0x0FF);
-
-        byte[] data = this.encodeData(header);
+        byte[] encoding = new byte[encodedSize()];
+        encodeTo(ByteBuffer.wrap(encoding));
+        return encoding;
+    }
 
-        ByteBuffer encoding = ByteBuffer.wrap(new byte[
-                header.length + data.length]);
-        encoding.put(header);
-        encoding.put(data);
+    /**
+     * Serialize the message into a buffer, starting at its position. On
+     * return the position is just past the encoding. Fields are written
+     * big-endian regardless of the order of buffer.
+     *
+     * @param buffer buffer to serialize into
+     * @return buffer
+     * @throws BufferOverflowException if buffer has fewer than encodedSize()
+     * bytes remaining (buffer is unchanged)
+     */
+    public ByteBuffer encodeTo(ByteBuffer buffer)
+            throws BufferOverflowException {
+        if (buffer.remaining() < encodedSize()) {
+            throw new BufferOverflowException();
+        }
+        int header = buffer.position();
+        buffer.put((byte) (VERSION | RSRVD));
+        buffer.put((byte) 0);
+        putUnsignedShort(buffer, (int) (this.queryID >>> 16));
+        putUnsignedShort(buffer, (int) this.queryID);
+        this.encodeData(buffer, header);
+        return buffer;
+    }
 
-        return encoding.array();
+    /**
+     * Get the exact length in bytes of the serialized message
+     *
+     * @return length of the serialized message
+     */
+    public int encodedSize() {
+        return HLEN + this.dataSize();
     }
 
     /**
      * Finishes encoding header and encodes data for a Message
      *
-     * @param header the incomplete header encoding
-     * @return a byte array of the encoded data
+     * @param buffer buffer positioned just past the incomplete header
+     * @param header index of the incomplete header in buffer
+     */
+    protected abstract void encodeData(ByteBuffer buffer, int header);
+
+    /**
+     * Get the length in bytes of the data following the header
+     *
+     * @return length of the encoded data
      */
-    protected abstract byte[] encodeData(byte[] header);
+    protected abstract int dataSize();
 
     /**
      * Returns whether a Message is equal to Object o
@@ -181,6 +208,38 @@ public abstract class Message {
         return this.queryID == message.queryID;
     }
 
+    /**
+     * Wraps a packet for deserialization
+     *
+     * @param buffer packet to deserialize (may be null)
+     * @return buffer wrapping the packet, or null if buffer is null
+     */
+    static ByteBuffer wrap(byte[] buffer) {
+        return buffer == null ? null : ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Reads a big-endian unsigned 2 byte value
+     *
+     * @param buffer buffer to read from
+     * @param index index of the first byte
+     * @return the value read
+     */
+    static int getUnsignedShort(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0x0FF) << 8 | buffer.get(index + 1) & 0x0FF;
+    }
+
+    /**
+     * Writes a big-endian unsigned 2 byte value at the position of a buffer,
+     * advancing it
+     *
+     * @param buffer buffer to write to
+     * @param value value to be written (only its low 16 bits are used)
+     */
+    static void putUnsignedShort(ByteBuffer buffer, int value) {
+        buffer.put((byte) (value >>> 8)).put((byte) value);
+    }
+
     /**
      * Validates query ID
      *
@@ -8,7 +8,7 @@
 
 package stitch.serialization;
 
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -61,26 +61,37 @@ public class Query extends Message {
      * validation problems (VALIDATIONERROR).
      */
     public Query(byte[] buffer) throws CodeException {
+        this(wrap(buffer));
+    }
+
+    /**
+     * Deserialize query from the bytes between the position and limit of a
+     * buffer. On success the position is advanced to the limit.
+     *
+     * @param buffer bytes from which to deserialize
+     * @throws CodeException if validation fails. Validation problems include
+     * insufficient/excess bytes (PACKETTOOSHORT/LONG), bad QR field value
+     * (UNEXPECTEDPACKETTYPE), incorrect version (BADVERSION), bad reserve
+     * (NETWORKERROR), non-zero error code (UNEXPECTEDERRORCODE), or other
+     * validation problems (VALIDATIONERROR).
+     */
+    public Query(ByteBuffer buffer) throws CodeException {
         super(buffer, true);
+        int start = buffer.position();
         // check error code (second byte)
-        if (buffer[1] != 0) {
+        if (buffer.get(start + 1) != 0) {
             throw new CodeException(ErrorCode.UNEXPECTEDERRORCODE);
         }
         // check if data too short
-        if (buffer.length < QLEN) {
+        if (buffer.remaining() < QLEN) {
             throw new CodeException(ErrorCode.PACKETTOOSHORT);
         }
         // check if data too long
-        if (buffer.length > QLEN) {
+        if (buffer.remaining() > QLEN) {
             throw new CodeException(ErrorCode.PACKETTOOLONG);
         }
-        // check requested post number
-        try {
-            this.requestedPosts = validateRequestedPosts(
-                    new BigInteger(buffer, 6, 2).shortValue() & MAXPOSTS);
-        } catch (IllegalArgumentException ex) {
-            throw new CodeException(ErrorCode.VALIDATIONERROR, ex);
-        }
+        this.requestedPosts = getUnsignedShort(buffer, start + HLEN);
+        buffer.position(buffer.limit());
     }
 
     /**
@@ -119,18 +130,22 @@ public class Query extends Message {
     /**
      * Finishes encoding header and encodes data for a Message
      *
-     * @param header the incomplete header encoding
-     * @return a byte array of the encoded data
+     * @param buffer buffer positioned just past the incomplete header
+     * @param header index of the incomplete header in buffer
      */
-    protected byte[] encodeData(byte[] header) {
-        header[0] = (byte) (header[0] | Message.QUERY);
-        header[1] = 0;
-
-        byte[] data = new byte[2];
-        data[0] = (byte) (requestedPosts >> 8);
-        data[1] = (byte) (requestedPosts & 0b01111_1111);
+    protected void encodeData(ByteBuffer buffer, int header) {
+        buffer.put(header, (byte) (buffer.get(header) | Message.QUERY));
+        buffer.put(header + 1, (byte) 0);
+        putUnsignedShort(buffer, requestedPosts);
+    }
 
-        return data;
+    /**
+     * Get the length in bytes of the data following the header
+     *
+     * @return length of the encoded data
+     */
+    protected int dataSize() {
+        return QLEN - HLEN;
     }
 
     /**
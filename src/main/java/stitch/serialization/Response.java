@@ -8,11 +8,11 @@
 
 package stitch.serialization;
 
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
 
 /**
  * Represents a Stitch response and performs serialization/deserialization
@@ -35,9 +35,17 @@ public class Response extends Message {
     public static final int RLEN = 7;
 
     /**
-     * Permitted format for posts (all printable ISO-8859-1 characters)
+     * Permitted characters for posts (all printable ISO-8859-1 characters,
+     * regex [ -~¡-¬®-ÿ]*)
      */
-    private static final String POSTFORMAT = "^[ -~¡-¬®-ÿ]*$";
+    private static final boolean[] POSTFORMAT = new boolean[256];
+
+    static {
+        for (int c = 0; c < POSTFORMAT.length; ++c) {
+            POSTFORMAT[c] = (c >= ' ' && c <= '~') || (c >= '¡' && c <= '¬') ||
+                    (c >= '®' && c <= 'ÿ');
+        }
+    }
 
     /**
      * Response error code
@@ -76,44 +84,68 @@ public class Response extends Message {
      * validation problems (VALIDATIONERROR)
      */
     public Response(byte[] buffer) throws CodeException {
+        this(wrap(buffer));
+    }
+
+    /**
+     * Deserialize response from the bytes between the position and limit of
+     * a buffer. On success the position is advanced to the limit. Posts are
+     * validated here but only converted to Strings when first accessed.
+     *
+     * @param buffer bytes from which to deserialize
+     * @throws CodeException if validation fails. Validation problems include
+     * insufficient/excess bytes (PACKETTOOSHORT/LONG), bad QR field value
+     * (UNEXPECTEDPACKETTYPE), incorrect version (BADVERSION), bad reserve
+     * (NETWORKERROR), unexpected error code (UNEXPECTEDERRORCODE), or other
+     * validation problems (VALIDATIONERROR)
+     */
+    public Response(ByteBuffer buffer) throws CodeException {
         super (buffer, false);
+        int start = buffer.position();
         // set error code
         try {
-            this.errorCode = ErrorCode.getErrorCode(buffer[1]);
+            this.errorCode = ErrorCode.getErrorCode(buffer.get(start + 1));
         } catch (IllegalArgumentException ex) {
             throw new CodeException(ErrorCode.UNEXPECTEDERRORCODE, ex);
         }
         // check if packet too short
-        if (buffer.length < RLEN) {
+        if (buffer.remaining() < RLEN) {
             throw new CodeException(ErrorCode.PACKETTOOSHORT);
         }
-        int postCnt = buffer[RLEN - 1] & MAXPOSTS;
-        if (buffer.length < RLEN + 2 * postCnt) {
+        int postCnt = buffer.get(start + RLEN - 1) & MAXPOSTS;
+        int length = buffer.remaining() - RLEN;
+        if (length < 2 * postCnt) {
             throw new CodeException(ErrorCode.PACKETTOOSHORT);
         }
-        // set posts
-        int next = RLEN;
-        List<String> posts = new ArrayList<>();
+        // copy posts out of the caller's buffer, then check lengths and
+        // characters in a single pass
+        byte[] data = new byte[length];
+        buffer.get(start + RLEN, data);
+        int[] offsets = new int[postCnt + 1];
+        int next = 0;
         for (int i = 0; i < postCnt; ++i) {
-            if (next + 2 > buffer.length) {
+            if (next + 2 > length) {
                 throw new CodeException(ErrorCode.PACKETTOOSHORT);
             }
-            int len = new BigInteger(buffer, next, 2).shortValue() & 0x0FFFF;
+            offsets[i] = next;
+            int len = (data[next] & 0x0FF) << 8 | data[next + 1] & 0x0FF;
             next += 2;
-            if (next + len > buffer.length) {
+            if (next + len > length) {
                 throw new CodeException(ErrorCode.PACKETTOOSHORT);
             }
-            String s = new String(buffer, next, len, Message.ENC);
-            if (!s.matches(POSTFORMAT)) {
-                throw new CodeException(ErrorCode.VALIDATIONERROR);
+            for (int j = next; j < next + len; ++j) {
+                if (!POSTFORMAT[data[j] & 0x0FF]) {
+                    throw new CodeException(ErrorCode.VALIDATIONERROR);
+                }
             }
-            posts.add(s);
             next += len;
         }
-        if (next != buffer.length) {
+        if (next != length) {
             throw new CodeException(ErrorCode.PACKETTOOLONG);
         }
-        this.posts = posts;
+        offsets[postCnt] = next;
+        this.posts = new Posts(data, offsets);
+        buffer.position(buffer.limit());
     }
 
     /**
@@ -136,7 +168,7 @@ public class Response extends Message {
     /**
      * Get the response list of posts
      *
-     * @return current list of posts
+     * @return current list of posts (read-only if deserialized)
      */
     public List<String> getPosts() {
         return this.posts;
@@ -180,32 +212,37 @@ public class Response extends Message {
     }
 
     /**
-     * Finishes encoding header and encodes data for a Message
+     * Finishes encoding header and encodes data for a Message. Posts are
+     * written character by character, since each is known to be ISO-8859-1.
      *
-     * @param header the incomplete header encoding
-     * @return a byte array of the encoded data
+     * @param buffer buffer positioned just past the incomplete header
+     * @param header index of the incomplete header in buffer
      */
-    protected byte[] encodeData(byte[] header) {
-        header[0] = (byte) (header[0] | Message.RESPONSE);
-        header[1] = (byte) this.getErrorCode().getErrorCodeValue();
+    protected void encodeData(ByteBuffer buffer, int header) {
+        buffer.put(header, (byte) (buffer.get(header) | Message.RESPONSE));
+        buffer.put(header + 1,
+                (byte) this.getErrorCode().getErrorCodeValue());
 
-        int length = 0;
+        buffer.put((byte) posts.size());
         for (String post : posts) {
-            length += post.length();
+            putUnsignedShort(buffer, post.length());
+            for (int i = 0; i < post.length(); ++i) {
+                buffer.put((byte) post.charAt(i));
+            }
         }
+    }
 
-        ByteBuffer data = ByteBuffer.wrap(new byte[1 + length +
-                2 * posts.size()]);
-
-        data.put((byte) posts.size());
-
+    /**
+     * Get the length in bytes of the data following the header
+     *
+     * @return length of the encoded data
+     */
+    protected int dataSize() {
+        int length = RLEN - HLEN;
         for (String post : posts) {
-            data.put((byte) (post.length() >> 8));
-            data.put((byte) (post.length() & 0b01111_1111));
-            data.put(post.getBytes(ENC));
+            length += 2 + post.length();
         }
-
-        return data.array();
+        return length;
     }
 
     /**
@@ -264,11 +301,92 @@ public class Response extends Message {
         }
         for (String post : posts) {
             if (post == null || post.length() > MAXLEN ||
-                    !post.matches(POSTFORMAT)) {
+                    !isPostFormat(post)) {
                 throw new IllegalArgumentException("Bad post in list (" +
                         posts.indexOf(post) + "): " + post);
             }
         }
         return posts;
     }
+
+    /**
+     * Checks that a post contains only permitted characters
+     *
+     * @param post post to be checked
+     * @return true if all characters are permitted; false otherwise
+     */
+    private static boolean isPostFormat(String post) {
+        for (int i = 0; i < post.length(); ++i) {
+            char c = post.charAt(i);
+            if (c >= POSTFORMAT.length || !POSTFORMAT[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read-only list view of deserialized posts, which converts each post to
+     * a String the first time it is accessed
+     */
+    private static final class Posts extends AbstractList<String>
+            implements RandomAccess {
+
+        /**
+         * Encoded posts, each preceded by its 2 byte length
+         */
+        private final byte[] data;
+
+        /**
+         * Index in data of each encoded post, followed by the end of data
+         */
+        private final int[] offsets;
+
+        /**
+         * Posts converted so far (null if not yet accessed)
+         */
+        private final String[] cache;
+
+        /**
+         * Creates a view of encoded posts
+         *
+         * @param data encoded posts, each preceded by its 2 byte length
+         * @param offsets index in data of each encoded post, followed by the
+         *                end of data
+         */
+        Posts(byte[] data, int[] offsets) {
+            this.data = data;
+            this.offsets = offsets;
+            this.cache = new String[offsets.length - 1];
+        }
+
+        /**
+         * Returns the post at an index, converting it on first access
+         *
+         * @param index index of the post
+         * @return the post
+         * @throws IndexOutOfBoundsException if index is out of range
+         */
+        @Override
+        public String get(int index) {
+            String post = cache[Objects.checkIndex(index, cache.length)];
+            if (post == null) {
+                int off = offsets[index] + 2;
+                post = new String(data, off, offsets[index + 1] - off,
+                        Message.ENC);
+                cache[index] = post;
+            }
+            return post;
+        }
+
+        /**
+         * Returns the number of posts
+         *
+         * @return the number of posts
+         */
+        @Override
+        public int size() {
+            return cache.length;
+        }
+    }
 }
@@ -15,6 +15,9 @@ import stitch.serialization.*;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -95,6 +98,18 @@ class QueryTest {
             assertEquals(QUERY, new Query(QENC));
         }
 
+        /**
+         * Tests serialized constructor from the middle of a buffer
+         */
+        @Test
+        void bufferSerialConstructorTest() throws CodeException {
+            ByteBuffer buffer = ByteBuffer.allocate(QENC.length + 2);
+            buffer.put((byte) -1).put(QENC).put((byte) -1);
+            buffer.position(1).limit(QENC.length + 1);
+            assertEquals(QUERY, new Query(buffer));
+            assertEquals(buffer.limit(), buffer.position());
+        }
+
         /**
          * Tests short array serialized constructor
          */
@@ -226,6 +241,50 @@ class QueryTest {
         assertEquals(0, Arrays.compare(QENC, QUERY.encode()));
     }
 
+    /**
+     * Tests encode into a buffer at an offset
+     */
+    @Test
+    void encodeToTest() {
+        ByteBuffer buffer = ByteBuffer.allocate(QENC.length + 3);
+        buffer.position(1);
+        assertSame(buffer, QUERY.encodeTo(buffer));
+        assertEquals(QENC.length + 1, buffer.position());
+        assertEquals(0, Arrays.compare(QENC, 0, QENC.length,
+                buffer.array(), 1, QENC.length + 1));
+    }
+
+    /**
+     * Tests that encode into a little-endian buffer still writes big-endian
+     */
+    @Test
+    void encodeToLittleEndianTest() {
+        ByteBuffer buffer = ByteBuffer.allocate(QENC.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        QUERY.encodeTo(buffer);
+        assertEquals(0, Arrays.compare(QENC, buffer.array()));
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+    }
+
+    /**
+     * Tests encode into a buffer that is too small
+     */
+    @Test
+    void encodeToOverflowTest() {
+        ByteBuffer buffer = ByteBuffer.allocate(QENC.length - 1);
+        assertThrows(BufferOverflowException.class, () ->
+                QUERY.encodeTo(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    /**
+     * Tests encoded size matches encoding
+     */
+    @Test
+    void encodedSizeTest() {
+        assertEquals(QENC.length, QUERY.encodedSize());
+    }
+
     /**
      * Tests equals method
      */
@@ -16,7 +16,9 @@ import stitch.serialization.CodeException;
 import stitch.serialization.ErrorCode;
 import stitch.serialization.Response;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -180,6 +182,31 @@ class ResponseTest {
             assertEquals(RESPONSE, new Response(RENC));
         }
 
+        /**
+         * Tests serialized constructor from the middle of a buffer
+         */
+        @Test
+        void bufferSerialConstructorTest() throws CodeException {
+            ByteBuffer buffer = ByteBuffer.allocate(RENC.length + 2);
+            buffer.put((byte) -1).put(RENC).put((byte) -1);
+            buffer.position(1).limit(RENC.length + 1);
+            assertEquals(RESPONSE, new Response(buffer));
+            assertEquals(buffer.limit(), buffer.position());
+        }
+
+        /**
+         * Tests deserialized posts are a read-only view
+         */
+        @Test
+        void readOnlyPostsTest() throws CodeException {
+            List<String> posts = new Response(RENC).getPosts();
+            assertEquals(GOODPOSTS, posts);
+            assertThrows(UnsupportedOperationException.class, () ->
+                    posts.add("test4"));
+            assertThrows(IndexOutOfBoundsException.class, () ->
+                    posts.get(GOODPOSTS.size()));
+        }
+
         /**
          * Tests short array serialized constructor
          */
@@ -367,6 +394,50 @@ class ResponseTest {
         assertEquals(0, Arrays.compare(RENC, RESPONSE.encode()));
     }
 
+    /**
+     * Tests encode into a buffer at an offset
+     */
+    @Test
+    void encodeToTest() {
+        ByteBuffer buffer = ByteBuffer.allocate(RENC.length + 3);
+        buffer.position(1);
+        assertSame(buffer, RESPONSE.encodeTo(buffer));
+        assertEquals(RENC.length + 1, buffer.position());
+        assertEquals(0, Arrays.compare(RENC, 0, RENC.length,
+                buffer.array(), 1, RENC.length + 1));
+    }
+
+    /**
+     * Tests that encode into a little-endian buffer still writes big-endian
+     */
+    @Test
+    void encodeToLittleEndianTest() {
+        ByteBuffer buffer = ByteBuffer.allocate(RENC.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        RESPONSE.encodeTo(buffer);
+        assertEquals(0, Arrays.compare(RENC, buffer.array()));
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+    }
+
+    /**
+     * Tests encode into a buffer that is too small
+     */
+    @Test
+    void encodeToOverflowTest() {
+        ByteBuffer buffer = ByteBuffer.allocate(RENC.length - 1);
+        assertThrows(BufferOverflowException.class, () ->
+                RESPONSE.encodeTo(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    /**
+     * Tests encoded size matches encoding
+     */
+    @Test
+    void encodedSizeTest() {
+        assertEquals(RENC.length, RESPONSE.encodedSize());
+    }
+
     /**
      * Tests equals method
      */